@@ -0,0 +1,29 @@
+package net.justonedev;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Runs the benchmarks with the usual JMH arguments. The results are saved as JSON named after the time, unless -rff is
+ * given.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(options);
+        if (!options.getResult().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+            builder.result("jmh-result-%s.json".formatted(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss"))));
+        }
+        new Runner(builder.build()).run();
+    }
+}
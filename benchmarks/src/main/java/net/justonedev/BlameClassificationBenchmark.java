@@ -0,0 +1,45 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.MutableIntegerPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts code, comment and empty lines per author from {@code git blame --incremental}, like the {@code GIT_BLAME}
+ * mode does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BlameClassificationBenchmark {
+
+    private SyntheticData.BlameOutput blame;
+    private IncrementalBlame blamer;
+
+    @Setup
+    public void setup() {
+        blame = SyntheticData.blameOutput(10_000, 20);
+        blamer = new IncrementalBlame(".", null, AuthorAliases.forRepository("."));
+    }
+
+    @Benchmark
+    public Map<String, MutableIntegerPair> classify() {
+        var reader = blamer.newReader("src/File.java", IncrementalBlame.classifyLines(blame.content()));
+        blame.output().forEach(reader);
+        return reader.toBlame().blame();
+    }
+}
@@ -0,0 +1,64 @@
+package net.justonedev;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deduplicates commit IDs, each added twice, with a {@link CommitIdSet} and with a HashSet. Run with {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CommitIdSetBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int commits;
+
+    private String[] ids;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        ids = new String[commits];
+        for (int i = 0; i < commits; i++) ids[i] = SyntheticData.commitId(random);
+    }
+
+    @Benchmark
+    public int commitIdSet() {
+        CommitIdSet set = new CommitIdSet();
+        for (String id : ids) set.add(id);
+        int duplicates = 0;
+        for (String id : ids) {
+            if (!set.add(id)) duplicates++;
+        }
+        return duplicates;
+    }
+
+    @Benchmark
+    public int hashSet() {
+        Set<String> set = new HashSet<>();
+        for (String id : ids) set.add(id);
+        int duplicates = 0;
+        for (String id : ids) {
+            if (!set.add(id)) duplicates++;
+        }
+        return duplicates;
+    }
+}
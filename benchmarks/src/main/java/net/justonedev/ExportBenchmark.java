@@ -0,0 +1,57 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.RepositoryStats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports the stats of several repositories plus their "All Projects" sheet into a temporary file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({ "EXCEL", "CSV", "JSON_LINES", "BINARY" })
+    public ExportFormat format;
+
+    private List<RepositoryStats> repositories;
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        repositories = new ArrayList<>(SyntheticData.repositories(3, 50, 20_000));
+        repositories.add(RepositoryStats.accumulate(Main.TITLE_ALL_PROJECTS, repositories));
+        file = File.createTempFile("benchmark", "." + format.getExtension());
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        format.getExporter().export(file, repositories);
+        return file.length();
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+}
@@ -0,0 +1,54 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.FileStats;
+import net.justonedev.statswrapper.UserStats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a numstat log the same way {@link StatsGetter#fillGitStatistics} does, without running git.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NumstatParseBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int commits;
+
+    private byte[] log;
+    private PathFilter filter;
+    private AuthorAliases aliases;
+
+    @Setup
+    public void setup() {
+        log = SyntheticData.numstatLog(commits, 50, commits / 4);
+        filter = PathFilter.of(Config.EXCLUDED_FILES);
+        aliases = AuthorAliases.forRepository(".");
+    }
+
+    @Benchmark
+    public UserStats parse() throws IOException {
+        UserStats allBranches = new UserStats();
+        var collector = new StatsGetter.CommitStatsCollector(filter, aliases, new CommitIdSet(), allBranches, new UserStats(), new FileStats());
+        new NumstatParser(collector).parse(new ByteArrayInputStream(log));
+        collector.flush();
+        return allBranches;
+    }
+}
@@ -0,0 +1,180 @@
+package net.justonedev;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates git repositories with {@code git fast-import}. Every branch only changes its own files, so its merges into
+ * the main branch, every {@link #MERGE_INTERVAL} commits and at the end, never conflict.
+ */
+final class RepositoryGenerator {
+
+    private static final int MERGE_INTERVAL = 10;
+    private static final long START_TIME = 1_600_000_000L;
+    private static final String[] CODE = { "int count = %d;", "return value + %d;", "list.add(%d);", "if (index > %d) {", "}" };
+    private static final String[] COMMENTS = { "// Handles case %d", "/** Returns %d. */", " * See issue %d" };
+
+    private final Shape shape;
+    private final Random random;
+    private final List<List<String>> files = new ArrayList<>();
+    private final List<Set<Integer>> changedSinceMerge = new ArrayList<>();
+    private final int[] branchTips;
+    private final int[] commitsSinceMerge;
+    private int mark = 0, commits = 0;
+    private OutputStream out;
+
+    /**
+     * The same shape and seed always create the same repository. About one in twenty files is an excluded Python file.
+     */
+    record Shape(int commits, int files, int authors, int branches, int linesPerFile, double commentRatio, long seed) {
+
+        @Override
+        public String toString() {
+            return "%d commits, %d files, %d authors, %d branches, %d lines per file, %.0f%% comments".formatted(
+                    commits, files, authors, branches, linesPerFile, commentRatio * 100);
+        }
+    }
+
+    private RepositoryGenerator(Shape shape) {
+        this.shape = shape;
+        this.random = new Random(shape.seed());
+        this.branchTips = new int[Math.max(1, shape.branches())];
+        this.commitsSinceMerge = new int[branchTips.length];
+        for (int i = 0; i < branchTips.length; i++) changedSinceMerge.add(new HashSet<>());
+    }
+
+    /**
+     * Creates a repository in a directory that must not exist yet, and checks out the main branch.
+     */
+    static void generate(Shape shape, File directory) throws IOException, InterruptedException {
+        if (!directory.mkdirs()) throw new IOException("Could not create " + directory);
+        run(directory, "git", "init", "-q", "-b", Config.MAIN_BRANCH);
+        Process process = new ProcessBuilder("git", "fast-import", "--quiet")
+                .directory(directory)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (OutputStream out = new BufferedOutputStream(process.getOutputStream(), 1 << 16)) {
+            new RepositoryGenerator(shape).write(out);
+        }
+        if (process.waitFor() != 0) throw new IOException("git fast-import failed in " + directory);
+        run(directory, "git", "checkout", "-q", "-f", Config.MAIN_BRANCH);
+    }
+
+    private static void run(File directory, String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).directory(directory).inheritIO().start();
+        if (process.waitFor() != 0) throw new IOException("%s failed in %s".formatted(String.join(" ", command), directory));
+    }
+
+    private void write(OutputStream out) throws IOException {
+        this.out = out;
+        // The first commit adds all files
+        for (int file = 0; file < shape.files(); file++) {
+            List<String> lines = new ArrayList<>();
+            int length = 1 + random.nextInt(2 * shape.linesPerFile());
+            for (int i = 0; i < length; i++) lines.add(createLine());
+            files.add(lines);
+        }
+        List<Integer> allFiles = new ArrayList<>();
+        for (int file = 0; file < shape.files(); file++) allFiles.add(file);
+        commit(0, -1, allFiles);
+
+        while (commits < shape.commits()) {
+            int branch = random.nextInt(branchTips.length);
+            if (branch != 0 && commitsSinceMerge[branch] >= MERGE_INTERVAL) {
+                merge(branch);
+                continue;
+            }
+            int changes = 1 + random.nextInt(3);
+            List<Integer> changed = new ArrayList<>();
+            for (int i = 0; i < changes; i++) {
+                int file = ownedFile(branch);
+                if (file < 0) break;
+                modify(files.get(file));
+                changed.add(file);
+                changedSinceMerge.get(branch).add(file);
+            }
+            commit(branch, -1, changed);
+            commitsSinceMerge[branch]++;
+        }
+        for (int branch = 1; branch < branchTips.length; branch++) {
+            if (!changedSinceMerge.get(branch).isEmpty()) merge(branch);
+        }
+    }
+
+    private int ownedFile(int branch) {
+        int owned = (shape.files() - branch + branchTips.length - 1) / branchTips.length;
+        if (owned <= 0) return -1;
+        return branch + random.nextInt(owned) * branchTips.length;
+    }
+
+    private void merge(int branch) throws IOException {
+        commit(0, branch, new ArrayList<>(changedSinceMerge.get(branch)));
+        changedSinceMerge.get(branch).clear();
+        commitsSinceMerge[branch] = 0;
+    }
+
+    private void commit(int branch, int mergedBranch, List<Integer> changedFiles) throws IOException {
+        int parent = branchTips[branch] != 0 ? branchTips[branch] : branchTips[0];
+        int author = random.nextInt(Math.max(1, shape.authors()));
+        long time = START_TIME + commits * 600L;
+        String identity = "%s <author%d@example.com> %d +0000".formatted(SyntheticData.author(author), author, time);
+        String message = mergedBranch < 0 ? "Change %d".formatted(commits) : "Merge %s".formatted(branchName(mergedBranch));
+
+        StringBuilder header = new StringBuilder();
+        header.append("commit refs/heads/").append(branchName(branch)).append('\n');
+        header.append("mark :").append(++mark).append('\n');
+        header.append("author ").append(identity).append('\n');
+        header.append("committer ").append(identity).append('\n');
+        header.append("data ").append(message.length()).append('\n').append(message).append('\n');
+        if (parent != 0) header.append("from :").append(parent).append('\n');
+        if (mergedBranch >= 0) header.append("merge :").append(branchTips[mergedBranch]).append('\n');
+        out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+        for (int file : changedFiles) {
+            byte[] content = (String.join("\n", files.get(file)) + "\n").getBytes(StandardCharsets.UTF_8);
+            out.write("M 100644 inline %s\ndata %d\n".formatted(path(file), content.length).getBytes(StandardCharsets.UTF_8));
+            out.write(content);
+            out.write('\n');
+        }
+        branchTips[branch] = mark;
+        commits++;
+    }
+
+    /**
+     * Replaces, adds or removes a few lines, keeping the file close to the configured size.
+     */
+    private void modify(List<String> lines) {
+        int edits = 1 + random.nextInt(5);
+        for (int i = 0; i < edits; i++) {
+            int index = random.nextInt(lines.size() + 1);
+            int kind = random.nextInt(3);
+            if (kind == 0 && lines.size() > 1 && lines.size() > shape.linesPerFile() / 2) lines.remove(Math.min(index, lines.size() - 1));
+            else if (kind == 1 || lines.size() < shape.linesPerFile()) lines.add(index, createLine());
+            else lines.set(Math.min(index, lines.size() - 1), createLine());
+        }
+    }
+
+    private String createLine() {
+        double kind = random.nextDouble();
+        if (kind < 0.05) return "";
+        String[] templates = kind < 0.05 + shape.commentRatio() ? COMMENTS : CODE;
+        return "    " + templates[random.nextInt(templates.length)].formatted(random.nextInt(10_000));
+    }
+
+    private static String branchName(int branch) {
+        return branch == 0 ? Config.MAIN_BRANCH : "feature-%d".formatted(branch);
+    }
+
+    private static String path(int file) {
+        String extension = file % 20 == 19 ? "py" : "java";
+        return "src/main/java/module%d/File%d.%s".formatted(file % 25, file, extension);
+    }
+}
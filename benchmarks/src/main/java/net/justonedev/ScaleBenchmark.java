@@ -0,0 +1,238 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.RepositoryStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+/**
+ * Generates repositories of growing size and reports the wall time, CPU time, peak RSS and peak heap of every phase of
+ * a run on them, see the README. With {@code --object-store}, every difference of that backend to git is reported.
+ * CPU time of git and RSS are read from /proc, on Linux only.
+ */
+public class ScaleBenchmark {
+
+    private static final String CSV_HEADER = "commits,files,authors,branches,lines_per_file,comment_ratio,phase,wall_ms,cpu_ms,git_cpu_ms,peak_rss_mb,peak_heap_mb";
+    private static final Map<String, String> DEFAULTS = Map.of(
+            "--commits", "1000,10000,100000",
+            "--files", "500",
+            "--authors", "20",
+            "--branches", "4",
+            "--lines", "200",
+            "--comments", "0.2",
+            "--seed", "42",
+            "--format", "xlsx"
+    );
+    private static final List<String> FLAGS = List.of("--cached", "--object-store", "--keep");
+    // USER_HZ, which is 100 on all common Linux systems
+    private static final double MILLIS_PER_CLOCK_TICK = 10;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (options == null) return;
+        ExportFormat format = ExportFormat.fromName(options.get("--format"));
+        if (format == null) {
+            System.out.printf("Unknown export format \"%s\"%n", options.get("--format"));
+            return;
+        }
+        Path directory = options.containsKey("--directory") ? Path.of(options.get("--directory")) : Files.createTempDirectory("gitstats-scale");
+        String defaultOutput = "scale-result-%s.csv".formatted(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss")));
+        File output = new File(options.getOrDefault("--output", defaultOutput));
+        boolean writeHeader = !output.exists();
+
+        try (PrintStream csv = new PrintStream(Files.newOutputStream(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (writeHeader) csv.println(CSV_HEADER);
+            for (String commits : options.get("--commits").split(",")) {
+                RepositoryGenerator.Shape shape = new RepositoryGenerator.Shape(Integer.parseInt(commits.trim()),
+                        Integer.parseInt(options.get("--files")), Integer.parseInt(options.get("--authors")),
+                        Integer.parseInt(options.get("--branches")), Integer.parseInt(options.get("--lines")),
+                        Double.parseDouble(options.get("--comments")), Long.parseLong(options.get("--seed")));
+                run(shape, directory.resolve("repository-%d".formatted(shape.commits())).toFile(), format,
+                        options.containsKey("--cached"), options.containsKey("--object-store"), options.containsKey("--keep"), csv);
+            }
+        }
+        System.out.printf("Results were appended to %s%n", output.getAbsolutePath());
+    }
+
+    private static void run(RepositoryGenerator.Shape shape, File repository, ExportFormat format, boolean cached, boolean objectStore, boolean keep,
+                            PrintStream csv) throws Exception {
+        System.out.printf("%n=== %s ===%n", shape);
+        if (repository.exists()) delete(repository.toPath());
+        List<Measurement> measurements = new ArrayList<>();
+        try {
+            measurements.add(measure("generate", () -> {
+                RepositoryGenerator.generate(shape, repository);
+                return null;
+            }));
+
+            StatsGetter uncached = new StatsGetter();
+            uncached.setUseStatsCache(false);
+            uncached.setUseBlameCache(false);
+            RepositoryStats stats = measure("stats", measurements, () -> uncached.getAllGitStats(repository.getPath()));
+            if (cached) {
+                measure("stats_fill_cache", measurements, () -> new StatsGetter().getAllGitStats(repository.getPath()));
+                measure("stats_cached", measurements, () -> new StatsGetter().getAllGitStats(repository.getPath()));
+            }
+            if (objectStore) {
+                StatsGetter inProcess = new StatsGetter();
+                inProcess.setUseStatsCache(false);
+                inProcess.setUseBlameCache(false);
+                inProcess.setHistoryBackend(HistoryBackend.OBJECT_STORE);
+                RepositoryStats inProcessStats = measure("stats_object_store", measurements, () -> inProcess.getAllGitStats(repository.getPath()));
+                compareHistory(stats, inProcessStats);
+            }
+
+            File file = new File(repository.getParentFile(), "%s.%s".formatted(repository.getName(), format.getExtension()));
+            measure("export_" + format.getExtension(), measurements, () -> {
+                format.getExporter().export(file, List.of(stats));
+                return null;
+            });
+            if (!keep) Files.deleteIfExists(file.toPath());
+        } finally {
+            if (!keep && repository.exists()) delete(repository.toPath());
+        }
+
+        System.out.printf("%n%-18s %10s %10s %10s %10s %10s%n", "phase", "wall ms", "cpu ms", "git cpu ms", "rss MB", "heap MB");
+        for (Measurement measurement : measurements) {
+            System.out.println(measurement);
+            csv.printf(Locale.ROOT, "%d,%d,%d,%d,%d,%s,%s%n", shape.commits(), shape.files(), shape.authors(), shape.branches(), shape.linesPerFile(),
+                    shape.commentRatio(), measurement.toCsv());
+        }
+        csv.flush();
+    }
+
+    private static void compareHistory(RepositoryStats git, RepositoryStats objectStore) {
+        List<String> expected = describeHistory(git), actual = describeHistory(objectStore);
+        List<String> differences = new ArrayList<>();
+        for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+            String line = i < expected.size() ? expected.get(i) : "";
+            String other = i < actual.size() ? actual.get(i) : "";
+            if (!line.equals(other)) differences.add("  git: %s%n  object store: %s".formatted(line, other));
+        }
+        if (differences.isEmpty()) System.out.println("The object store backend read the same history stats as git");
+        else System.out.printf("The object store backend differs from git in %d lines:%n%s%n", differences.size(), String.join("\n", differences));
+    }
+
+    private static List<String> describeHistory(RepositoryStats stats) {
+        List<String> lines = new ArrayList<>();
+        for (var userStats : List.of(stats.fullBranchStats(), stats.mainBranchStats())) {
+            lines.addAll(userStats.toString().lines().toList());
+            lines.addAll(userStats.toStringCommits(false).lines().toList());
+        }
+        stats.fileStats().getAllChangesSorted().forEach((file) -> lines.add("%s +%d -%d".formatted(file.getFileName(), file.getAdditions(), file.getDeletions())));
+        return lines;
+    }
+
+    private static <T> T measure(String phase, List<Measurement> measurements, Callable<T> task) throws Exception {
+        Object[] result = new Object[1];
+        measurements.add(measure(phase, () -> {
+            result[0] = task.call();
+            return null;
+        }));
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    private static Measurement measure(String phase, Callable<Void> task) throws Exception {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream().filter((pool) -> pool.getType() == MemoryType.HEAP).toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        resetPeakRss();
+        var os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+        long cpu = os.getProcessCpuTime();
+        double gitCpu = readChildCpuMillis();
+        long start = System.nanoTime();
+        task.call();
+        long wall = System.nanoTime() - start;
+
+        double childCpu = readChildCpuMillis() - gitCpu;
+        long peakHeap = heapPools.stream().mapToLong((pool) -> pool.getPeakUsage().getUsed()).sum();
+        return new Measurement(phase, wall / 1e6, (os.getProcessCpuTime() - cpu) / 1e6, childCpu, readPeakRssBytes() / 1048576d, peakHeap / 1048576d);
+    }
+
+    /**
+     * @return the CPU time of all child processes that ended, or NaN if unknown.
+     */
+    private static double readChildCpuMillis() {
+        try {
+            String stat = Files.readString(Path.of("/proc/self/stat"));
+            // The fields after the process name, which may contain spaces, start with the state as field 3
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return (Long.parseLong(fields[16 - 3]) + Long.parseLong(fields[17 - 3])) * MILLIS_PER_CLOCK_TICK;
+        } catch (IOException | RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static void resetPeakRss() {
+        try {
+            Files.writeString(Path.of("/proc/self/clear_refs"), "5");
+        } catch (IOException | RuntimeException ignored) {
+            // Then the peak of the whole run is reported
+        }
+    }
+
+    private static double readPeakRssBytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) return Long.parseLong(line.replaceAll("\\D", "")) * 1024d;
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // Not on Linux
+        }
+        return Double.NaN;
+    }
+
+    private static void delete(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : paths.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (int i = 0; i < args.length; i++) {
+            if (FLAGS.contains(args[i])) options.put(args[i], "true");
+            else if (args[i].startsWith("--") && i + 1 < args.length) options.put(args[i], args[++i]);
+            else {
+                System.out.printf("Unknown argument \"%s\". Options: %s, %s, --directory, --output%n", args[i], String.join(", ", DEFAULTS.keySet()), String.join(", ", FLAGS));
+                return null;
+            }
+        }
+        return options;
+    }
+
+    private record Measurement(String phase, double wallMillis, double cpuMillis, double gitCpuMillis, double peakRssMegabytes, double peakHeapMegabytes) {
+
+        String toCsv() {
+            return Arrays.stream(new double[] { wallMillis, cpuMillis, gitCpuMillis, peakRssMegabytes, peakHeapMegabytes })
+                    .mapToObj((value) -> Double.isNaN(value) ? "" : String.format(Locale.ROOT, "%.1f", value))
+                    .reduce(phase, (a, b) -> a + "," + b);
+        }
+
+        @Override
+        public String toString() {
+            return "%-18s %10.1f %10.1f %10.1f %10.1f %10.1f".formatted(phase, wallMillis, cpuMillis, gitCpuMillis, peakRssMegabytes, peakHeapMegabytes);
+        }
+    }
+}
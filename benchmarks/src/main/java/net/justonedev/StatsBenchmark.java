@@ -0,0 +1,63 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.FileChanges;
+import net.justonedev.statswrapper.FileStats;
+import net.justonedev.statswrapper.RepositoryStats;
+import net.justonedev.statswrapper.UserChanges;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges, sorts and ranks the stats of several repositories, like the "All Projects" sheet does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StatsBenchmark {
+
+    // Like a table of the Excel export with EXCEL_TOP_ROWS set
+    private static final int TOP_ROWS = 100;
+
+    private List<RepositoryStats> repositories;
+    private RepositoryStats total;
+
+    @Setup
+    public void setup() {
+        repositories = SyntheticData.repositories(5, 200, 50_000);
+        total = RepositoryStats.accumulate(Main.TITLE_ALL_PROJECTS, repositories);
+    }
+
+    @Benchmark
+    public RepositoryStats accumulate() {
+        return RepositoryStats.accumulate(Main.TITLE_ALL_PROJECTS, repositories);
+    }
+
+    @Benchmark
+    public List<UserChanges> userChangesSorted() {
+        return total.fullBranchStats().getAllChangesSorted();
+    }
+
+    @Benchmark
+    public List<FileChanges> fileChangesSorted() {
+        return total.fileStats().getAllChangesSorted();
+    }
+
+    @Benchmark
+    public List<FileChanges> fileChangesTop() {
+        return total.fileStats().getTopChanges(FileStats.Ranking.CHANGES, TOP_ROWS);
+    }
+}
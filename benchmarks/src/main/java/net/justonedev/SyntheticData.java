@@ -0,0 +1,137 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.FileStats;
+import net.justonedev.statswrapper.RepositoryStats;
+import net.justonedev.statswrapper.UserStats;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the inputs of the benchmarks with fixed seeds, so all runs work on the same data.
+ */
+final class SyntheticData {
+
+    private static final long SEED = 42;
+    private static final String[] EXTENSIONS = { "java", "java", "java", "ts", "md", "json", "py", "svg" };
+    private static final String[] CODE = { "return value;", "int count = 0;", "}", "if (file == null) {", "list.add(item);" };
+    private static final String[] COMMENTS = { "// TODO", "/**", " * Returns the value.", " */" };
+
+    private SyntheticData() {}
+
+    static String author(int index) {
+        return "Author %d".formatted(index);
+    }
+
+    static String path(int index) {
+        return "src/module%d/package%d/File%d.%s".formatted(index % 40, index % 13, index, EXTENSIONS[index % EXTENSIONS.length]);
+    }
+
+    static String commitId(Random random) {
+        byte[] bytes = new byte[20];
+        random.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    /**
+     * Creates the output of {@code git log -z --numstat} with {@link NumstatParser#LOG_FORMAT}. Every 20th commit is a
+     * merge without changes and every 50th change is a rename.
+     */
+    static byte[] numstatLog(int commits, int authors, int files) {
+        Random random = new Random(SEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String parent = commitId(random);
+        for (int i = 0; i < commits; i++) {
+            String commit = commitId(random);
+            boolean merge = i % 20 == 19;
+            String parents = merge ? parent + " " + commitId(random) : parent;
+            int author = random.nextInt(authors);
+            out.writeBytes("commit %s %s\t%s <author%d@example.com>".formatted(commit, parents, author(author), author).getBytes(StandardCharsets.UTF_8));
+            if (merge) {
+                out.write(0);
+            } else {
+                out.write('\n');
+                int changes = 1 + random.nextInt(8);
+                for (int j = 0; j < changes; j++) {
+                    int file = random.nextInt(files);
+                    String counts = random.nextInt(30) == 0 ? "-\t-\t" : "%d\t%d\t".formatted(random.nextInt(200), random.nextInt(100));
+                    String paths = random.nextInt(50) == 0 ? "\0%s\0%s".formatted(path(random.nextInt(files)), path(file)) : path(file);
+                    out.writeBytes((counts + paths).getBytes(StandardCharsets.UTF_8));
+                    out.write(0);
+                }
+            }
+            out.write(0);
+            parent = commit;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates a file and its {@code git blame --incremental} output, in ranges of up to 8 lines from 5 commits per
+     * author.
+     */
+    static BlameOutput blameOutput(int lines, int authors) {
+        Random random = new Random(SEED);
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i <= lines; i++) {
+            content.append(switch (random.nextInt(10)) {
+                case 0 -> "";
+                case 1, 2 -> COMMENTS[random.nextInt(COMMENTS.length)];
+                default -> "        " + CODE[random.nextInt(CODE.length)];
+            }).append('\n');
+        }
+
+        String[] commits = new String[authors * 5];
+        for (int i = 0; i < commits.length; i++) commits[i] = commitId(random);
+        boolean[] printed = new boolean[commits.length];
+        List<String> output = new ArrayList<>();
+        for (int line = 1; line <= lines; ) {
+            int commit = random.nextInt(commits.length), count = Math.min(1 + random.nextInt(8), lines - line + 1);
+            output.add("%s %d %d %d".formatted(commits[commit], line, line, count));
+            if (!printed[commit]) {
+                printed[commit] = true;
+                int author = commit % authors;
+                output.addAll(List.of("author " + author(author), "author-mail <author%d@example.com>".formatted(author), "author-time 1704106800",
+                        "author-tz +0100", "committer " + author(author), "committer-mail <author%d@example.com>".formatted(author),
+                        "committer-time 1704106800", "committer-tz +0100", "summary Change %d".formatted(commit)));
+            }
+            output.add("filename src/File.java");
+            line += count;
+        }
+        return new BlameOutput(content.toString().getBytes(StandardCharsets.UTF_8), output);
+    }
+
+    record BlameOutput(byte[] content, List<String> output) { }
+
+    /**
+     * Creates the stats of repositories that were all worked on by the same authors.
+     */
+    static List<RepositoryStats> repositories(int count, int authors, int files) {
+        Random random = new Random(SEED);
+        List<RepositoryStats> repositories = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UserStats full = userStats(random, authors), main = userStats(random, authors);
+            UserStats blame = userStats(random, authors), comments = userStats(random, authors);
+            FileStats fileStats = new FileStats();
+            for (int file = 0; file < files; file++) {
+                fileStats.addChanges(path(file), random.nextInt(5000), random.nextInt(5000));
+                if (random.nextInt(4) != 0) fileStats.incrementLines(path(file), 1 + random.nextInt(2000), random.nextInt(1500));
+            }
+            repositories.add(new RepositoryStats("repository-%d".formatted(i), full, main, blame, comments, fileStats));
+        }
+        return repositories;
+    }
+
+    private static UserStats userStats(Random random, int authors) {
+        UserStats stats = new UserStats();
+        for (int author = 0; author < authors; author++) {
+            stats.addChanges(author(author), random.nextInt(100_000), random.nextInt(100_000));
+            stats.addCommits(author(author), 1 + random.nextInt(1000));
+        }
+        return stats;
+    }
+}
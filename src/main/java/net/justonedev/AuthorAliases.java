@@ -0,0 +1,175 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.AuthorIds;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the identities authors commit with, like "Name &lt;email&gt;", to the author they are counted as: by the
+ * .mailmap of the repository, then the shared {@link Config#ALIAS_FILE} in the same format and then
+ * {@link Config#ALIASES}. Every identity is resolved once and memoized, repositories with the same .mailmap share an
+ * instance. Thread-safe.
+ */
+final class AuthorAliases {
+
+    private static final String MAILMAP = ".mailmap";
+    private static final List<String> SHARED_LINES = readLines(new File(Config.ALIAS_FILE));
+    // By the content of the .mailmap, so that repositories without one or with the same one share the memo
+    private static final Map<List<String>, AuthorAliases> BY_MAILMAP = new ConcurrentHashMap<>();
+
+    private final Mailmap mailmap;
+    private final Mailmap shared;
+    private final String description;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * @param sharedLines the lines of the shared alias file.
+     */
+    AuthorAliases(List<String> mailmapLines, List<String> sharedLines) {
+        mailmap = Mailmap.parse(mailmapLines);
+        shared = Mailmap.parse(sharedLines);
+        description = describe(mailmapLines, sharedLines);
+    }
+
+    /**
+     * @return the SHA-256 of everything the authors are resolved with, leaving out lines that do not change anything.
+     */
+    private static String describe(List<String> mailmapLines, List<String> sharedLines) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (List<String> lines : List.of(mailmapLines, sharedLines)) {
+            for (String line : lines) {
+                if (line.isBlank() || line.trim().startsWith("#")) continue;
+                digest.update((line.trim() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            // Separates the files, so that a line cannot move from one into the other unnoticed
+            digest.update((byte) 0);
+        }
+        new TreeMap<>(Config.ALIASES).forEach((name, alias) -> digest.update((name + "\0" + alias + "\n").getBytes(StandardCharsets.UTF_8)));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return the aliases of the repository, from the .mailmap in its working tree.
+     */
+    static AuthorAliases forRepository(String repoPath) {
+        return BY_MAILMAP.computeIfAbsent(readLines(new File(repoPath, MAILMAP)), (lines) -> new AuthorAliases(lines, SHARED_LINES));
+    }
+
+    /**
+     * @param identity the name and email of the author as "Name &lt;email&gt;", or only the name.
+     * @return the ID of the author, see {@link AuthorIds}.
+     */
+    int getId(String identity) {
+        Integer id = ids.get(identity);
+        if (id == null) {
+            id = AuthorIds.of(resolve(identity));
+            ids.put(identity, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param identity the name and email of the author as "Name &lt;email&gt;", or only the name.
+     * @return the name the author is counted as.
+     */
+    String getName(String identity) {
+        return AuthorIds.name(getId(identity));
+    }
+
+    private String resolve(String identity) {
+        int start = identity.lastIndexOf('<');
+        int end = identity.lastIndexOf('>');
+        String name = start < 0 || end < start ? identity.trim() : identity.substring(0, start).trim();
+        String email = start < 0 || end < start ? null : identity.substring(start + 1, end).trim();
+        name = mailmap.map(name, email);
+        name = shared.map(name, email);
+        return Config.getAlias(name);
+    }
+
+    /**
+     * Describes the mailmaps and aliases, to notice when cached stats were resolved with different ones.
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    private static List<String> readLines(File file) {
+        if (!file.isFile()) return List.of();
+        try {
+            return Files.readAllLines(file.toPath());
+        } catch (IOException e) {
+            System.out.printf("Warning: Could not read %s: %s%n", file, e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * The proper names from a file in the .mailmap format, per commit email and name, and per commit name for
+     * identities without an email.
+     */
+    private record Mailmap(Map<String, Map<String, String>> byEmail, Map<String, String> byName) {
+
+        // Stands for any commit name in byEmail
+        private static final String ANY_NAME = "";
+
+        static Mailmap parse(List<String> lines) {
+            Map<String, Map<String, String>> byEmail = new HashMap<>();
+            Map<String, String> byName = new HashMap<>();
+            for (String line : lines) {
+                if (line.isBlank() || line.trim().startsWith("#")) continue;
+                // "Proper Name <proper@email> Commit Name <commit@email>", everything but one email is optional
+                int firstStart = line.indexOf('<'), firstEnd = line.indexOf('>', firstStart + 1);
+                if (firstStart < 0 || firstEnd < 0) continue;
+                String properName = line.substring(0, firstStart).trim();
+                String email = line.substring(firstStart + 1, firstEnd).trim();
+                String commitName = null;
+                int secondStart = line.indexOf('<', firstEnd), secondEnd = line.indexOf('>', secondStart + 1);
+                if (secondStart >= 0 && secondEnd >= 0) {
+                    commitName = line.substring(firstEnd + 1, secondStart).trim();
+                    email = line.substring(secondStart + 1, secondEnd).trim();
+                }
+                // Lines that only fix the email do not change the name
+                if (properName.isEmpty()) continue;
+                boolean hasCommitName = commitName != null && !commitName.isEmpty();
+                byEmail.computeIfAbsent(normalize(email), (key) -> new HashMap<>()).put(hasCommitName ? normalize(commitName) : ANY_NAME, properName);
+                if (hasCommitName) byName.put(normalize(commitName), properName);
+            }
+            return new Mailmap(byEmail, byName);
+        }
+
+        /**
+         * @param email the email, or null if unknown.
+         * @return the proper name, or the given name if there is none.
+         */
+        String map(String name, String email) {
+            if (email == null) return byName.getOrDefault(normalize(name), name);
+            Map<String, String> names = byEmail.get(normalize(email));
+            if (names == null) return name;
+            String properName = names.get(normalize(name));
+            if (properName == null) properName = names.get(ANY_NAME);
+            return properName == null ? name : properName;
+        }
+
+        private static String normalize(String value) {
+            return value.toLowerCase(Locale.ROOT);
+        }
+    }
+}
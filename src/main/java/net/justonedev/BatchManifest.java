@@ -0,0 +1,81 @@
+package net.justonedev;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the repositories of a batch run from a manifest, one repository with optional settings per line, see the
+ * README. Include rules are exclude rules starting with "!", relative paths are relative to the manifest.
+ */
+final class BatchManifest {
+
+    private BatchManifest() {}
+
+    /**
+     * A repository of a batch run. No revision blames the working tree, a timeout of 0 never skips it.
+     */
+    record Entry(String path, String mainBranch, String revision, FetchPolicy fetchPolicy, List<String> rules, int priority, long timeoutMinutes) {
+
+        static Entry of(String path, FetchPolicy fetchPolicy, long timeoutMinutes) {
+            return new Entry(path, Config.MAIN_BRANCH, null, fetchPolicy, List.of(), 0, timeoutMinutes);
+        }
+    }
+
+    /**
+     * Reads a manifest with the given defaults. Lines with errors are reported and skipped.
+     */
+    static List<Entry> read(File file, FetchPolicy fetchPolicy, long timeoutMinutes) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file.toPath());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                entries.add(parse(file.getAbsoluteFile().getParentFile(), Main.parseDirectories(line), fetchPolicy, timeoutMinutes));
+            } catch (IllegalArgumentException e) {
+                System.out.printf("Warning: Skipping line %d of %s: %s%n", i + 1, file.getName(), e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    private static Entry parse(File directory, List<String> parts, FetchPolicy fetchPolicy, long timeoutMinutes) {
+        if (parts.isEmpty()) throw new IllegalArgumentException("No repository given");
+        String path = Main.expandHome(parts.getFirst());
+        if (!new File(path).isAbsolute()) path = new File(directory, path).getPath();
+        String mainBranch = Config.MAIN_BRANCH;
+        String revision = null;
+        List<String> rules = new ArrayList<>();
+        int priority = 0;
+        for (String part : parts.subList(1, parts.size())) {
+            int separator = part.indexOf('=');
+            if (separator <= 0) throw new IllegalArgumentException("Expected key=value, got \"%s\"".formatted(part));
+            String value = part.substring(separator + 1);
+            switch (part.substring(0, separator)) {
+                case "main" -> mainBranch = value;
+                case "revision" -> revision = value;
+                case "fetch" -> {
+                    fetchPolicy = FetchPolicy.fromName(value);
+                    if (fetchPolicy == null) throw new IllegalArgumentException("Unknown fetch policy in \"%s\"".formatted(part));
+                }
+                case "priority" -> priority = parseNumber(part, value);
+                case "timeout" -> timeoutMinutes = parseNumber(part, value);
+                case "exclude" -> rules.add(value);
+                case "include" -> rules.add("!" + value);
+                default -> throw new IllegalArgumentException("Unknown setting \"%s\"".formatted(part));
+            }
+        }
+        return new Entry(path, mainBranch, revision, fetchPolicy, List.copyOf(rules), priority, timeoutMinutes);
+    }
+
+    private static int parseNumber(String part, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number in \"%s\"".formatted(part));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.FileStats;
+import net.justonedev.statswrapper.RepositoryStats;
+import net.justonedev.statswrapper.UserStats;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Writes all stats in a columnar binary format. Numbers are unsigned LEB128 varints, strings use
+ * {@link java.io.DataOutput#writeUTF(String)}, and the user tables follow the order of {@link StatsExporter.UserTable}:
+ * <pre>
+ * file       = "GSTS" version:int32 count:varint repository*
+ * repository = name:utf user-table{4} file-table
+ * user-table = rows:varint author:utf{rows} additions{rows} deletions{rows} commits{rows}
+ * file-table = rows:varint path:utf{rows} additions{rows} deletions{rows} lines{rows} linesOfCode{rows}
+ * </pre>
+ */
+final class BinaryExport {
+
+    private static final byte[] MAGIC = { 'G', 'S', 'T', 'S' };
+    private static final int FORMAT_VERSION = 1;
+
+    private BinaryExport() {}
+
+    static void write(File file, List<RepositoryStats> repositories) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.write(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeVarLong(out, repositories.size());
+            for (RepositoryStats repo : repositories) {
+                out.writeUTF(repo.name());
+                for (StatsExporter.UserTable table : StatsExporter.UserTable.values()) {
+                    writeUserTable(out, table.get(repo));
+                }
+                writeFileTable(out, repo.fileStats());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeUserTable(DataOutputStream out, UserStats stats) throws IOException {
+        int rows = stats.size();
+        long[] numbers = new long[rows * 3];
+        int[] row = { 0 };
+        writeVarLong(out, rows);
+        stats.forEachUser((author, additions, deletions, commits) -> {
+            writeUTF(out, author);
+            numbers[row[0]] = additions;
+            numbers[rows + row[0]] = deletions;
+            numbers[2 * rows + row[0]] = commits;
+            row[0]++;
+        });
+        writeColumns(out, numbers);
+    }
+
+    private static void writeFileTable(DataOutputStream out, FileStats stats) throws IOException {
+        int rows = stats.size();
+        long[] numbers = new long[rows * 4];
+        int[] row = { 0 };
+        writeVarLong(out, rows);
+        // The paths are rebuilt while walking the files, so they are written in the same pass as the numbers are collected
+        stats.forEachFile((path, additions, deletions, lines, linesOfCode) -> {
+            writeUTF(out, path);
+            numbers[row[0]] = additions;
+            numbers[rows + row[0]] = deletions;
+            numbers[2 * rows + row[0]] = lines;
+            numbers[3 * rows + row[0]] = linesOfCode;
+            row[0]++;
+        });
+        writeColumns(out, numbers);
+    }
+
+    /**
+     * Writes the number columns, which are stored one after another.
+     */
+    private static void writeColumns(DataOutputStream out, long[] numbers) {
+        for (long number : numbers) {
+            writeVarLong(out, number);
+        }
+    }
+
+    private static void writeUTF(DataOutputStream out, String value) {
+        try {
+            out.writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes 7 bits per byte, the highest bit tells whether more bytes follow.
+     */
+    private static void writeVarLong(DataOutputStream out, long value) {
+        try {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
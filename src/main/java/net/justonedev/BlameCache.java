@@ -0,0 +1,186 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.MutableIntegerPair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Caches the blame of files on disk by blob ID and last commit, which together determine the blame, so it is shared
+ * between all repositories. Entries resolved with other aliases count as not cached.
+ */
+final class BlameCache {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final Pattern REGEX_TREE_ENTRY = Pattern.compile("^\\d+ blob ([\\da-f]+)\t(.+)$");
+    private static final Pattern REGEX_COMMIT = Pattern.compile("^commit ([\\da-f]+)$");
+    // Once the cache is larger than the maximum size, the least recently used entries are removed until it is at most this full
+    private static final double EVICTION_TARGET = 0.9;
+
+    private final File directory;
+    private final long maxSize;
+    private final AtomicBoolean modified = new AtomicBoolean(false);
+
+    BlameCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Files that are not committed or have uncommitted changes get no key, as their blame depends on the working tree.
+     */
+    static Map<String, String> getKeys(String repoPath, String revision, PathFilter filter, Collection<String> files) {
+        Set<String> remaining = new HashSet<>(files);
+        if (revision == null) {
+            GitCommands.runCommand(repoPath, "git -c core.quotePath=false diff --name-only HEAD", remaining::remove);
+            revision = "HEAD";
+        }
+
+        Map<String, String> blobs = new HashMap<>();
+        GitCommands.runCommand(repoPath, "git -c core.quotePath=false ls-tree -r \"%s\"".formatted(revision), (line) -> {
+            var matcher = REGEX_TREE_ENTRY.matcher(line);
+            if (matcher.matches() && remaining.contains(matcher.group(2))) blobs.put(matcher.group(2), matcher.group(1));
+        });
+        remaining.retainAll(blobs.keySet());
+
+        // Walk back the history until the last change of every file is known. Following the first parent only is
+        // the same path git blame takes while a file does not change.
+        Map<String, String> keys = new HashMap<>();
+        if (remaining.isEmpty()) return keys;
+        String[] currentCommit = { null };
+        String command = "git -c core.quotePath=false log \"%s\" --first-parent -m --name-only --pretty=format:\"commit %%H\" %s".formatted(revision, filter.toPathspecs());
+        GitCommands.runCommandWhile(repoPath, command, (line) -> {
+            var matcher = REGEX_COMMIT.matcher(line);
+            if (matcher.matches()) {
+                currentCommit[0] = matcher.group(1);
+            } else if (currentCommit[0] != null && remaining.remove(line)) {
+                keys.put(line, "%s-%s".formatted(blobs.get(line), currentCommit[0]));
+            }
+            return !remaining.isEmpty();
+        });
+        return keys;
+    }
+
+    /**
+     * @param key the key of the file, or null if it has none.
+     * @return whether there is an entry for the key, regardless of the aliases it was resolved with.
+     */
+    boolean contains(String key) {
+        return key != null && getEntryFile(key).isFile();
+    }
+
+    /**
+     * @return the blame, or null if it is not cached with these aliases.
+     */
+    StatsGetter.StringMapWrapper get(String key, String file, String aliases) {
+        File entry = getEntryFile(key);
+        if (!entry.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(aliases)) return null;
+            var lineBlame = readBlame(in);
+            var commentBlame = readBlame(in);
+            // Remember when the entry was last used for the eviction
+            entry.setLastModified(System.currentTimeMillis());
+            return new StatsGetter.StringMapWrapper(file, lineBlame, commentBlame);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    void put(String key, StatsGetter.StringMapWrapper blame, String aliases) {
+        File entry = getEntryFile(key);
+        File parent = entry.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) return;
+        File tempFile = new File(parent, "%s.%d.tmp".formatted(entry.getName(), Thread.currentThread().threadId()));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(aliases);
+            writeBlame(out, blame.blame());
+            writeBlame(out, blame.commentBlame());
+        } catch (IOException e) {
+            tempFile.delete();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified.set(true);
+        } catch (IOException e) {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Removes the least recently used entries if the cache grew larger than its maximum size.
+     */
+    synchronized void evict() {
+        if (!modified.getAndSet(false) || !directory.isDirectory()) return;
+        record Entry(Path path, long size, FileTime lastUsed) { }
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            for (Path path : paths.toList()) {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) entries.add(new Entry(path, attributes.size(), attributes.lastModifiedTime()));
+            }
+        } catch (IOException e) {
+            System.out.printf("Warning: Could not clean up blame cache %s: %s%n", directory, e.getMessage());
+            return;
+        }
+
+        long size = entries.stream().mapToLong(Entry::size).sum();
+        if (size <= maxSize) return;
+        entries.sort(Comparator.comparing(Entry::lastUsed));
+        for (Entry entry : entries) {
+            if (size <= maxSize * EVICTION_TARGET) break;
+            try {
+                Files.deleteIfExists(entry.path);
+                size -= entry.size;
+            } catch (IOException ignored) {
+                // Another process may be using or removing it, try the next one
+            }
+        }
+    }
+
+    private File getEntryFile(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key.substring(2) + ".bin");
+    }
+
+    private static void writeBlame(DataOutputStream out, Map<String, MutableIntegerPair> blame) throws IOException {
+        out.writeInt(blame.size());
+        for (var entry : blame.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().getFirst());
+            out.writeInt(entry.getValue().getSecond());
+        }
+    }
+
+    private static Map<String, MutableIntegerPair> readBlame(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, MutableIntegerPair> blame = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            blame.put(in.readUTF(), new MutableIntegerPair(in.readInt(), in.readInt()));
+        }
+        return blame;
+    }
+}
@@ -0,0 +1,16 @@
+package net.justonedev;
+
+/**
+ * How the final line ownership of the codebase is determined.
+ */
+public enum BlameMode {
+    /**
+     * Runs one {@code git blame} per file. Exact, but spawns one process per file.
+     */
+    GIT_BLAME,
+    /**
+     * Replays the first-parent history once and tracks the author of every line in-process. Binary files and files
+     * changed by merges fall back to {@code git blame}, uncommitted changes are left out.
+     */
+    HISTORY_REPLAY
+}
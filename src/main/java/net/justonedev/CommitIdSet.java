@@ -0,0 +1,130 @@
+package net.justonedev;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A set of commit IDs that stores SHA-1 IDs as 160 bits in primitive arrays, about 32 bytes per commit instead of more
+ * than 100 for Strings in a HashSet. Other IDs are kept as Strings. Not thread-safe.
+ */
+final class CommitIdSet {
+
+    private static final int SHA1_LENGTH = 40;
+    // Every slot takes three longs: the first 8 bytes, the next 8 bytes and the last 4 bytes with a marker bit
+    private static final int WORDS_PER_SLOT = 3;
+    private static final long OCCUPIED = 1L << 32;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final double MAX_LOAD = 0.75;
+
+    private long[] slots;
+    private int mask;
+    private int size = 0;
+    private Set<String> otherIds = null;
+    // The parts of the last parsed ID
+    private long first, second, last;
+
+    CommitIdSet() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of IDs the set should hold without growing.
+     */
+    CommitIdSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, (int) Math.ceil(expectedSize / MAX_LOAD)) - 1) << 1;
+        slots = new long[capacity * WORDS_PER_SLOT];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return true if the ID was not yet part of the set.
+     */
+    boolean add(CharSequence id) {
+        if (!parse(id)) {
+            if (otherIds == null) otherIds = new HashSet<>();
+            return otherIds.add(id.toString());
+        }
+        int slot = find(first, second, last);
+        if (slots[slot + 2] != 0) return false;
+        slots[slot] = first;
+        slots[slot + 1] = second;
+        slots[slot + 2] = last;
+        if (++size > (mask + 1) * MAX_LOAD) grow();
+        return true;
+    }
+
+    boolean contains(CharSequence id) {
+        if (!parse(id)) return otherIds != null && otherIds.contains(id.toString());
+        return slots[find(first, second, last) + 2] != 0;
+    }
+
+    int size() {
+        return size + (otherIds == null ? 0 : otherIds.size());
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Passes every ID as a lowercase hex String to the consumer, in no particular order.
+     */
+    void forEach(Consumer<String> consumer) {
+        HexFormat hex = HexFormat.of();
+        for (int slot = 0; slot < slots.length; slot += WORDS_PER_SLOT) {
+            if (slots[slot + 2] == 0) continue;
+            consumer.accept(hex.toHexDigits(slots[slot]) + hex.toHexDigits(slots[slot + 1]) + hex.toHexDigits((int) slots[slot + 2]));
+        }
+        if (otherIds != null) otherIds.forEach(consumer);
+    }
+
+    void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+        otherIds = null;
+    }
+
+    /**
+     * @return the slot that holds the ID, or the empty slot where it belongs.
+     */
+    private int find(long first, long second, long last) {
+        // The IDs are hashes already, so their bits are used as they are
+        int index = (int) (first ^ (first >>> 32)) & mask;
+        while (true) {
+            int slot = index * WORDS_PER_SLOT;
+            long stored = slots[slot + 2];
+            if (stored == 0 || (stored == last && slots[slot] == first && slots[slot + 1] == second)) return slot;
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        mask = (mask << 1) | 1;
+        for (int slot = 0; slot < old.length; slot += WORDS_PER_SLOT) {
+            if (old[slot + 2] == 0) continue;
+            int target = find(old[slot], old[slot + 1], old[slot + 2]);
+            System.arraycopy(old, slot, slots, target, WORDS_PER_SLOT);
+        }
+    }
+
+    /**
+     * Parses a SHA-1 ID into {@link #first}, {@link #second} and {@link #last}, or returns false if it is none.
+     */
+    private boolean parse(CharSequence id) {
+        if (id.length() != SHA1_LENGTH) return false;
+        try {
+            first = HexFormat.fromHexDigitsToLong(id, 0, 16);
+            second = HexFormat.fromHexDigitsToLong(id, 16, 32);
+            last = (HexFormat.fromHexDigits(id, 32, 40) & 0xffffffffL) | OCCUPIED;
+            return true;
+        } catch (IllegalArgumentException e) {
+            // Not a hex digit
+            return false;
+        }
+    }
+}
@@ -1,15 +1,59 @@
 package net.justonedev;
 
+import java.util.List;
+import java.util.Map;
+
 public final class Config {
     public static final int SRC_FOLDER_MAX_DEPTH = 1;
+    public static final String MAIN_BRANCH = "main";
+    public static final BlameMode BLAME_MODE = BlameMode.GIT_BLAME;
+    // Reads the history with git or straight from the object database, see HistoryBackend
+    public static final HistoryBackend HISTORY_BACKEND = HistoryBackend.GIT;
+    // Whether the remotes are fetched before a repository is analysed, see FetchPolicy
+    public static final FetchPolicy FETCH_POLICY = FetchPolicy.ALWAYS;
+    // Used by FetchPolicy.IF_OLDER
+    public static final long FETCH_MAX_AGE_MINUTES = 60;
+    // Number of randomly sampled files that are also blamed with git blame to verify the HISTORY_REPLAY blame mode
+    public static final int BLAME_VERIFICATION_SAMPLES = 0;
+    // Caches the history stats inside the .git folder, so that following runs only need to read new commits
+    public static final boolean USE_STATS_CACHE = true;
+    public static final String CACHE_DIRECTORY_NAME = "gitstats";
+    // Caches the blame of unchanged files, shared between all repositories
+    public static final boolean USE_BLAME_CACHE = true;
+    public static final String BLAME_CACHE_DIRECTORY = System.getProperty("user.home") + "/.gitstats/blame-cache";
+    public static final long BLAME_CACHE_MAX_SIZE = 256L * 1024 * 1024;
+    // Files that are excluded from all stats, in .gitignore syntax. See PathFilter
+    public static final List<String> EXCLUDED_FILES = List.of("package.json", "package-lock.json", "npm-lock.yaml", "pnpm-lock.yaml", "*.py", "*.xlsx", "*.dot", "*.svg");
+    // Additional rules in the root of a repository, applied after EXCLUDED_FILES
+    public static final String PATH_FILTER_FILE = ".gitstats-filter";
+    // Aliases for all repositories in the .mailmap format, applied after the .mailmap of a repository. See AuthorAliases
+    public static final String ALIAS_FILE = System.getProperty("user.home") + "/.gitstats/aliases";
+    // Also excludes files marked as linguist-generated or linguist-vendored in the .gitattributes of a repository
+    public static final boolean USE_GITATTRIBUTES_FILTER = true;
+    // The maximum number of git processes that run at the same time, shared fairly between all repositories
+    public static final int MAX_GIT_PROCESSES = Runtime.getRuntime().availableProcessors();
+    // Prints the runtime and waiting time of every git process
+    public static final boolean LOG_GIT_PROCESSES = false;
+    // The number of rows per sheet the Excel export keeps in memory, all others are already written to disk
+    public static final int EXCEL_ROW_WINDOW = 100;
+    // The number of authors and files per table of the Excel export, all others are summed up in one row. 0 lists all of them
+    public static final int EXCEL_TOP_ROWS = 0;
+    // How many folder levels deep the "Changes per Folder" table of the Excel export goes
+    public static final int FOLDER_ROLLUP_DEPTH = 2;
+    // The maximum number of repositories that are analysed at the same time, the largest ones start first
+    public static final int MAX_PARALLEL_REPOSITORIES = 8;
+    // Repositories that take longer are skipped, 0 to wait for every repository
+    public static final long REPOSITORY_TIMEOUT_MINUTES = 0;
+    // Writes the time, git processes and counters per repository and phase next to the stats, as JSON and for Prometheus
+    public static final boolean WRITE_METRICS = true;
+    // Add your aliases here! The name an author commits with and the name they are counted as, applied after ALIAS_FILE
+    public static final Map<String, String> ALIASES = Map.of(
+            "Just1Developer", "JustOneDeveloper"
+    );
 
     private Config() {}
 
     public static String getAlias(String author) {
-        return switch (author) {
-            // Add your aliases here!
-            case "Just1Developer" -> "JustOneDeveloper";
-            default -> author;
-        };
+        return ALIASES.getOrDefault(author, author);
     }
 }
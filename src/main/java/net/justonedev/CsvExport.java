@@ -0,0 +1,61 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.RepositoryStats;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes all stats into a single CSV file with one row per author or file. The "table" column tells which stats a row
+ * belongs to, columns that do not apply to a table are left empty.
+ */
+final class CsvExport {
+
+    private static final String HEADER = "repository,table,name,additions,deletions,commits,lines,lines_of_code";
+
+    private CsvExport() {}
+
+    static void write(File file, List<RepositoryStats> repositories) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (RepositoryStats repo : repositories) {
+                String repository = escape(repo.name());
+                for (StatsExporter.UserTable table : StatsExporter.UserTable.values()) {
+                    table.get(repo).forEachUser((author, additions, deletions, commits) -> writeLine(writer,
+                            "%s,%s,%s,%d,%d,%d,,\n".formatted(repository, table.getName(), escape(author), additions, deletions, commits)));
+                }
+                repo.fileStats().forEachFile((path, additions, deletions, lines, linesOfCode) -> writeLine(writer,
+                        "%s,%s,%s,%d,%d,,%d,%d\n".formatted(repository, StatsExporter.UserTable.FILES, escape(path), additions, deletions, lines, linesOfCode)));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeLine(Writer writer, String line) {
+        try {
+            writer.write(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Quotes a value if it contains a separator, a quote or a line break.
+     */
+    private static String escape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
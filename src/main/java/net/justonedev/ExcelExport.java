@@ -1,6 +1,7 @@
 package net.justonedev;
 
 import net.justonedev.statswrapper.FileChanges;
+import net.justonedev.statswrapper.FileStats;
 import net.justonedev.statswrapper.RepositoryStats;
 import net.justonedev.statswrapper.UserChanges;
 import net.justonedev.statswrapper.UserStats;
@@ -14,88 +15,113 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.DefaultIndexedColorMap;
 import org.apache.poi.xssf.usermodel.XSSFColor;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 
 public class ExcelExport {
+    private static final int CHARACTER_WIDTH = 256;
+    private static final int MAX_COLUMN_WIDTH = 255 * CHARACTER_WIDTH;
+
     public static void writeExcel(String fileName, List<RepositoryStats> repositories) {
-        try (Workbook workbook = new XSSFWorkbook()) {
+        // Only keeps a window of rows in memory and writes all older rows to a temporary file, which close() deletes
+        SXSSFWorkbook workbook = new SXSSFWorkbook(Config.EXCEL_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try (workbook) {
+            StyleRegistry styles = new StyleRegistry(workbook);
             for (RepositoryStats repo : repositories) {
                 Sheet sheet = workbook.createSheet(repo.name());
-
-                var commits = UserStats.allChangesPlusTotal(repo.fullBranchStats().getAllChangesSortedByCommit());
-                addTable(sheet, 0, true, "Per-user Commits", List.of("Author", "Commits", "Average Additions", "Average Deletions"),
-                        commits.stream().map(UserChanges::getAuthor).toList(),
-                        commits.stream().map(c -> "%d".formatted(c.getCommits())).toList(),
-                        commits.stream().map(c -> "%.2f".formatted((double) c.getAdditions() / c.getCommits())).toList(),
-                        commits.stream().map(c -> "%.2f".formatted((double) c.getDeletions() / c.getCommits())).toList()
-                );
-
-                var sortedChanges = UserStats.allChangesPlusTotal(repo.fullBranchStats().getAllChangesSorted());
-                addTable(sheet, 5, true, "Additions / Deletions - All Branches", List.of("Author", "Additions", "Deletions"),
-                        sortedChanges.stream().map(UserChanges::getAuthor).toList(),
-                        sortedChanges.stream().map(c -> "%d".formatted(c.getAdditions())).toList(),
-                        sortedChanges.stream().map(c -> "%d".formatted(c.getDeletions())).toList()
-                );
-
-                var sortedChangesMain = UserStats.allChangesPlusTotal(repo.mainBranchStats().getAllChangesSorted());
-                addTable(sheet, 9, true, "Additions / Deletions - Main Branch" + (repo.name().equals(Main.TITLE_ALL_PROJECTS) ? "es" : ""), List.of("Author", "Additions", "Deletions"),
-                        sortedChangesMain.stream().map(UserChanges::getAuthor).toList(),
-                        sortedChangesMain.stream().map(c -> "%d".formatted(c.getAdditions())).toList(),
-                        sortedChangesMain.stream().map(c -> "%d".formatted(c.getDeletions())).toList()
-                );
-
-                var codePossession = UserStats.allChangesPlusTotal(repo.contributionStats().getAllChangesSorted());
+                List<Table<?>> tables = new ArrayList<>();
+
+                var commits = repo.fullBranchStats().getTopChangesPlusTotal(UserStats.Ranking.COMMITS, Config.EXCEL_TOP_ROWS);
+                addTable(tables, 0, true, "Per-user Commits", commits, List.of(
+                        text("Author", UserChanges::getAuthor),
+                        longs("Commits", UserChanges::getCommits),
+                        doubles("Average Additions", c -> (double) c.getAdditions() / c.getCommits()),
+                        doubles("Average Deletions", c -> (double) c.getDeletions() / c.getCommits())
+                ));
+
+                var sortedChanges = repo.fullBranchStats().getTopChangesPlusTotal(UserStats.Ranking.CHANGES, Config.EXCEL_TOP_ROWS);
+                addTable(tables, 5, true, "Additions / Deletions - All Branches", sortedChanges, List.of(
+                        text("Author", UserChanges::getAuthor),
+                        longs("Additions", UserChanges::getAdditions),
+                        longs("Deletions", UserChanges::getDeletions)
+                ));
+
+                var sortedChangesMain = repo.mainBranchStats().getTopChangesPlusTotal(UserStats.Ranking.CHANGES, Config.EXCEL_TOP_ROWS);
+                addTable(tables, 9, true, "Additions / Deletions - Main Branch" + (repo.name().equals(Main.TITLE_ALL_PROJECTS) ? "es" : ""), sortedChangesMain, List.of(
+                        text("Author", UserChanges::getAuthor),
+                        longs("Additions", UserChanges::getAdditions),
+                        longs("Deletions", UserChanges::getDeletions)
+                ));
+
+                var codePossession = repo.contributionStats().getTopChangesPlusTotal(UserStats.Ranking.CHANGES, Config.EXCEL_TOP_ROWS);
                 var totalCodePossession = codePossession.getLast();
-                addTable(sheet, 13, true, "Final Contributions - With Comments - Git Blame", List.of("Author", "Lines written", "Percent (%)"),
-                        codePossession.stream().map(UserChanges::getAuthor).toList(),
-                        codePossession.stream().map(c -> "%d".formatted(c.getAdditions())).toList(),
-                        codePossession.stream().map(c -> "%f".formatted(Math.round(((double) c.getAdditions() / totalCodePossession.getAdditions()) * 10000d) / 100d)).toList()
-                );
-
-                var codePossessionNoComments = UserStats.allChangesPlusTotal(repo.contributionStats().getAllChangesSortedBy((a, b) -> b.getDeletions() - a.getDeletions()));
-                addTable(sheet, 17, true, "Final Contributions - No Comments - Git Blame", List.of("Author", "Lines written", "Percent (%)"),
-                        codePossessionNoComments.stream().map(UserChanges::getAuthor).toList(),
-                        codePossessionNoComments.stream().map(c -> "%d".formatted(c.getDeletions())).toList(),
-                        codePossessionNoComments.stream().map(c -> "%f".formatted(Math.round(((double) c.getDeletions() / totalCodePossession.getDeletions()) * 10000d) / 100d)).toList()
-                );
-
-                var commentPossession = UserStats.allChangesPlusTotal(repo.contributionsCommentsStats().getAllChangesSortedBy((a, b) -> b.getAdditions() - a.getAdditions()));
+                addTable(tables, 13, true, "Final Contributions - With Comments - Git Blame", codePossession, List.of(
+                        text("Author", UserChanges::getAuthor),
+                        longs("Lines written", UserChanges::getAdditions),
+                        doubles("Percent (%)", c -> Math.round(((double) c.getAdditions() / totalCodePossession.getAdditions()) * 10000d) / 100d)
+                ));
+
+                var codePossessionNoComments = repo.contributionStats().getTopChangesPlusTotal(UserStats.Ranking.DELETIONS, Config.EXCEL_TOP_ROWS);
+                addTable(tables, 17, true, "Final Contributions - No Comments - Git Blame", codePossessionNoComments, List.of(
+                        text("Author", UserChanges::getAuthor),
+                        longs("Lines written", UserChanges::getDeletions),
+                        doubles("Percent (%)", c -> Math.round(((double) c.getDeletions() / totalCodePossession.getDeletions()) * 10000d) / 100d)
+                ));
+
+                var commentPossession = repo.contributionsCommentsStats().getTopChangesPlusTotal(UserStats.Ranking.ADDITIONS, Config.EXCEL_TOP_ROWS);
                 final var totalCommentPossessionAdd = codePossession.getLast();
-                addTable(sheet, 21, true, "Comments and Javadoc - Git Blame", List.of("Author", "Lines written", "Percent (%)"),
-                        commentPossession.stream().map(UserChanges::getAuthor).toList(),
-                        commentPossession.stream().map(c -> "%d".formatted(c.getAdditions())).toList(),
-                        commentPossession.stream().map(c -> "%f".formatted(Math.round(((double) c.getAdditions() / totalCommentPossessionAdd.getAdditions()) * 10000d) / 100d)).toList()
-                );
+                addTable(tables, 21, true, "Comments and Javadoc - Git Blame", commentPossession, List.of(
+                        text("Author", UserChanges::getAuthor),
+                        longs("Lines written", UserChanges::getAdditions),
+                        doubles("Percent (%)", c -> Math.round(((double) c.getAdditions() / totalCommentPossessionAdd.getAdditions()) * 10000d) / 100d)
+                ));
 
-                commentPossession = UserStats.allChangesPlusTotal(repo.contributionsCommentsStats().getAllChangesSortedBy((a, b) -> b.getDeletions() - a.getDeletions()));
+                commentPossession = repo.contributionsCommentsStats().getTopChangesPlusTotal(UserStats.Ranking.DELETIONS, Config.EXCEL_TOP_ROWS);
                 final var totalCommentPossessionDel = codePossession.getLast();
-                addTable(sheet, 25, true, "Empty Lines - Git Blame", List.of("Author", "Empty Lines written", "Percent (%)"),
-                        commentPossession.stream().map(UserChanges::getAuthor).toList(),
-                        commentPossession.stream().map(c -> "%d".formatted(c.getDeletions())).toList(),
-                        commentPossession.stream().map(c -> "%f".formatted(Math.round(((double) c.getDeletions() / totalCommentPossessionDel.getDeletions()) * 10000d) / 100d)).toList()
-                );
-
-                var fileStatsLines = repo.fileStats().getAllChangesSortedBy((a, b) -> Math.toIntExact(b.getLineCount() - a.getLineCount()), a -> a.getLineCount() > 0);
-                addTable(sheet, 29, "Files by Line Count", List.of("File", "All Lines", "Lines of Code"),
-                        fileStatsLines.stream().map(FileChanges::getFileName).toList(),
-                        fileStatsLines.stream().map(FileChanges::getLineCount).filter(d -> d > 0).map("%d"::formatted).toList(),
-                        fileStatsLines.stream().map(FileChanges::getLineCountLOC).filter(d -> d > 0).map("%d"::formatted).toList()
-                );
-
-                var fileStatsChanges = repo.fileStats().getAllChangesSorted();
-                addTable(sheet, 33, "Changes per File", List.of("File", "Total Additions", "Total Deletions", "Status"),
-                        fileStatsChanges.stream().map(FileChanges::getFileName).toList(),
-                        fileStatsChanges.stream().map(c -> "%d".formatted(c.getAdditions())).toList(),
-                        fileStatsChanges.stream().map(c -> "%d".formatted(c.getDeletions())).toList(),
-                        fileStatsChanges.stream().map(FileChanges::getLineCount).map(d -> d == 0 ? "gone" : "exists").toList()
-                );
-
+                addTable(tables, 25, true, "Empty Lines - Git Blame", commentPossession, List.of(
+                        text("Author", UserChanges::getAuthor),
+                        longs("Empty Lines written", UserChanges::getDeletions),
+                        doubles("Percent (%)", c -> Math.round(((double) c.getDeletions() / totalCommentPossessionDel.getDeletions()) * 10000d) / 100d)
+                ));
+
+                var fileStatsLines = repo.fileStats().getTopChangesPlusOthers(FileStats.Ranking.LINES, Config.EXCEL_TOP_ROWS);
+                addTable(tables, 29, false, "Files by Line Count", fileStatsLines, List.of(
+                        text("File", FileChanges::getFileName),
+                        longs("All Lines", FileChanges::getLineCount),
+                        nonZeroLongs("Lines of Code", FileChanges::getLineCountLOC)
+                ));
+
+                var fileStatsChanges = repo.fileStats().getTopChangesPlusOthers(FileStats.Ranking.CHANGES, Config.EXCEL_TOP_ROWS);
+                addTable(tables, 33, false, "Changes per File", fileStatsChanges, List.of(
+                        text("File", FileChanges::getFileName),
+                        longs("Total Additions", FileChanges::getAdditions),
+                        longs("Total Deletions", FileChanges::getDeletions),
+                        status("Status", (c) -> !c.isOthers(), (c) -> c.getLineCount() != 0)
+                ));
+
+                var folderStatsChanges = repo.fileStats().getFolderChangesSorted(Config.FOLDER_ROLLUP_DEPTH);
+                addTable(tables, 38, false, "Changes per Folder", folderStatsChanges, List.of(
+                        text("Folder", FileChanges::getFileName),
+                        longs("Total Additions", FileChanges::getAdditions),
+                        longs("Total Deletions", FileChanges::getDeletions),
+                        longs("All Lines", FileChanges::getLineCount)
+                ));
+
+                writeTables(sheet, tables, styles);
             }
             try (FileOutputStream fileOut = new FileOutputStream(fileName + (fileName.endsWith(".xlsx") ? "" : ".xlsx"))) {
                 workbook.write(fileOut);
@@ -106,134 +132,175 @@ public class ExcelExport {
     }
 
 
-    @SafeVarargs
-    private static void addTable(Sheet sheet,
-                                 int position,
-                                 String title,
-                                 List<String> columnTitles,
-                                 List<String>... columns) {
-        addTable(sheet, position, false, title, columnTitles, columns);
+    private static <T> void addTable(List<Table<?>> tables, int startColumn, boolean lastCellBold, String title, List<T> rows, List<Column<T>> columns) {
+        tables.add(new Table<>(startColumn, lastCellBold, title, rows, columns));
+    }
+
+    private static <T> Column<T> text(String title, Function<T, String> value) {
+        return new TextColumn<>(title, value);
     }
 
-    @SafeVarargs
-    private static void addTable(Sheet sheet,
-                                 int startColumn,
-                                 boolean lastCellBold,
-                                 String title,
-                                 List<String> columnTitles,
-                                 List<String>... columns) {
-        Workbook workbook = sheet.getWorkbook();
-
-        Font boldFont = workbook.createFont();
-        boldFont.setBold(true);
-
-        // --- Create a CellStyle for numeric cells with exactly two decimals ---
-        CellStyle numericStyleDouble = workbook.createCellStyle();
-        CellStyle numericStyleInt = workbook.createCellStyle();
-        DataFormat dataFormat = workbook.createDataFormat();
-        numericStyleDouble.setDataFormat(dataFormat.getFormat("0.00"));
-        numericStyleInt.setDataFormat(dataFormat.getFormat("0"));
-
-        CellStyle numericStyleDoubleBold = workbook.createCellStyle();
-        CellStyle numericStyleIntBold = workbook.createCellStyle();
-        numericStyleDoubleBold.setDataFormat(dataFormat.getFormat("0.00"));
-        numericStyleDoubleBold.setFont(boldFont);
-        numericStyleIntBold.setDataFormat(dataFormat.getFormat("0"));
-        numericStyleIntBold.setFont(boldFont);
-
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-
-        CellStyle boldStyle = workbook.createCellStyle();
-        boldStyle.setFont(headerFont);
-
-        CellStyle goneStyle = workbook.createCellStyle();
-        goneStyle.setAlignment(HorizontalAlignment.RIGHT);
-        XSSFColor redColor = new XSSFColor(new java.awt.Color(0xF14646), new DefaultIndexedColorMap());
-        goneStyle.setFillForegroundColor(redColor); // Hex: #E63030, red
-        goneStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        CellStyle existsStyle = workbook.createCellStyle();
-        existsStyle.setAlignment(HorizontalAlignment.RIGHT);
-        XSSFColor greenColor = new XSSFColor(new java.awt.Color(0x5CF345), new DefaultIndexedColorMap());
-        existsStyle.setFillForegroundColor(greenColor); // Hex: #3BD424, green
-        existsStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        CellStyle titleStyle = workbook.createCellStyle();
-        Font titleFont = workbook.createFont();
-        titleFont.setBold(true);
-        titleFont.setFontHeight((short) (titleFont.getFontHeight() * 1.3));
-        titleStyle.setFont(titleFont);
-        titleStyle.setAlignment(HorizontalAlignment.CENTER);
-
-        // Number of columns in the table
-        int numColumns = columnTitles.size();
-
-        // --- Title Row (row 0) ---
-        Row titleRow = getOrCreateRow(sheet, 0);
-        Cell titleCell = titleRow.createCell(startColumn);
-        titleCell.setCellValue(title);
-        titleCell.setCellStyle(titleStyle);
-        // Merge across all columns if more than one column
-        if (numColumns > 1) {
-            sheet.addMergedRegion(new CellRangeAddress(0, 0, startColumn, startColumn + numColumns - 1));
+    private static <T> Column<T> longs(String title, ToLongFunction<T> value) {
+        return new LongColumn<>(title, value, false);
+    }
+
+    /**
+     * Like {@link #longs(String, ToLongFunction)}, but leaves the cells of zeros empty.
+     */
+    private static <T> Column<T> nonZeroLongs(String title, ToLongFunction<T> value) {
+        return new LongColumn<>(title, value, true);
+    }
+
+    private static <T> Column<T> doubles(String title, ToDoubleFunction<T> value) {
+        return new DoubleColumn<>(title, value);
+    }
+
+    private static <T> Column<T> status(String title, Predicate<T> hasStatus, Predicate<T> exists) {
+        return new StatusColumn<>(title, hasStatus, exists);
+    }
+
+    /**
+     * A table next to the other tables of a sheet. The cells are computed from the rows while they are written.
+     */
+    private record Table<T>(int startColumn, boolean lastCellBold, String title, List<T> rows, List<Column<T>> columns) {
+        int dataRows() {
+            return rows.size();
         }
 
-        // --- Header Row (row 1) with bold style ---
-        Row headerRow = getOrCreateRow(sheet, 1);
+        void write(Row dataRow, int rowIndex, StyleRegistry styles, Map<Integer, Integer> maxLengths) {
+            boolean bold = lastCellBold && rowIndex == rows.size() - 1;
+            T row = rows.get(rowIndex);
+            for (int colIndex = 0; colIndex < columns.size(); colIndex++) {
+                int length = columns.get(colIndex).write(dataRow.createCell(startColumn + colIndex), row, bold, styles);
+                maxLengths.merge(startColumn + colIndex, length, Math::max);
+            }
+        }
+    }
 
-        for (int i = 0; i < numColumns; i++) {
-            Cell headerCell = headerRow.createCell(startColumn + i);
-            headerCell.setCellValue(columnTitles.get(i));
-            headerCell.setCellStyle(headerStyle);
+    /**
+     * A column of a table, which writes the value of a row straight into the cell.
+     */
+    private sealed interface Column<T> permits TextColumn, LongColumn, DoubleColumn, StatusColumn {
+        String title();
+
+        /**
+         * @return the number of characters the value is displayed with.
+         */
+        int write(Cell cell, T row, boolean bold, StyleRegistry styles);
+    }
+
+    private record TextColumn<T>(String title, Function<T, String> value) implements Column<T> {
+        @Override
+        public int write(Cell cell, T row, boolean bold, StyleRegistry styles) {
+            String text = value.apply(row);
+            cell.setCellValue(text);
+            if (bold) cell.setCellStyle(styles.get(Style.TEXT_BOLD));
+            return text.length();
+        }
+    }
+
+    private record LongColumn<T>(String title, ToLongFunction<T> value, boolean emptyIfZero) implements Column<T> {
+        @Override
+        public int write(Cell cell, T row, boolean bold, StyleRegistry styles) {
+            long number = value.applyAsLong(row);
+            if (emptyIfZero && number == 0) return 0;
+            cell.setCellValue(number);
+            cell.setCellStyle(styles.get(bold ? Style.INTEGER_BOLD : Style.INTEGER));
+            return numberLength(number);
+        }
+    }
+
+    private record DoubleColumn<T>(String title, ToDoubleFunction<T> value) implements Column<T> {
+        @Override
+        public int write(Cell cell, T row, boolean bold, StyleRegistry styles) {
+            double number = value.applyAsDouble(row);
+            cell.setCellValue(number);
+            cell.setCellStyle(styles.get(bold ? Style.DECIMAL_BOLD : Style.DECIMAL));
+            // Shown with two decimals
+            return Double.isFinite(number) ? numberLength((long) number) + 3 : 3;
+        }
+    }
+
+    /**
+     * Whether a file still exists, shown as a green "exists" or a red "gone". Rows without a status stay empty.
+     */
+    private record StatusColumn<T>(String title, Predicate<T> hasStatus, Predicate<T> exists) implements Column<T> {
+        @Override
+        public int write(Cell cell, T row, boolean bold, StyleRegistry styles) {
+            if (!hasStatus.test(row)) return 0;
+            boolean existing = exists.test(row);
+            String text = existing ? "exists" : "gone";
+            cell.setCellValue(text);
+            cell.setCellStyle(styles.get(bold ? Style.TEXT_BOLD : existing ? Style.EXISTS : Style.GONE));
+            return text.length();
+        }
+    }
+
+    private static int numberLength(long value) {
+        int length = value < 0 ? 2 : 1;
+        for (long remaining = Math.abs(value / 10); remaining > 0; remaining /= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * The streaming workbook only keeps a few rows in memory, so every row is written once with the cells of all tables.
+     */
+    private static void writeTables(Sheet sheet, List<Table<?>> tables, StyleRegistry styles) {
+        // The longest value per column, auto-sizing would need all rows in memory
+        Map<Integer, Integer> maxLengths = new HashMap<>();
+
+        // --- Title Row (row 0) and Header Row (row 1) with bold style ---
+        Row titleRow = sheet.createRow(0);
+        Row headerRow = sheet.createRow(1);
+        for (Table<?> table : tables) {
+            int numColumns = table.columns.size();
+            Cell titleCell = titleRow.createCell(table.startColumn);
+            titleCell.setCellValue(table.title);
+            titleCell.setCellStyle(styles.get(Style.TITLE));
+            // Merge across all columns if more than one column
+            if (numColumns > 1) {
+                sheet.addMergedRegion(new CellRangeAddress(0, 0, table.startColumn, table.startColumn + numColumns - 1));
+            }
+
+            for (int i = 0; i < numColumns; i++) {
+                Cell headerCell = headerRow.createCell(table.startColumn + i);
+                String columnTitle = table.columns.get(i).title();
+                headerCell.setCellValue(columnTitle);
+                headerCell.setCellStyle(styles.get(Style.HEADER));
+                maxLengths.merge(table.startColumn + i, columnTitle.length(), Math::max);
+            }
         }
 
         // --- Data Rows (starting at row 2) ---
-        int dataRows = (columns.length > 0) ? columns[0].size() : 0;
+        int dataRows = tables.stream().mapToInt(Table::dataRows).max().orElse(0);
         for (int rowIndex = 0; rowIndex < dataRows; rowIndex++) {
-            Row dataRow = getOrCreateRow(sheet, 2 + rowIndex);
-
-            for (int colIndex = 0; colIndex < numColumns; colIndex++) {
-                Cell cell = dataRow.createCell(startColumn + colIndex);
-                boolean bold = lastCellBold && rowIndex == dataRows - 1;
-                String cellValue = columns[colIndex].get(rowIndex);
-
-                // Attempt to parse the cell value as a double
-                Double parsed = tryParseDouble(cellValue);
-                if (parsed != null) {
-                    if (cellValue.matches("^-?\\d+$")) {
-                        cell.setCellValue(Integer.parseInt(cellValue));
-                        cell.setCellStyle(bold ? numericStyleIntBold : numericStyleInt);
-                    } else {
-                        cell.setCellValue(parsed);
-                        cell.setCellStyle(bold ? numericStyleDoubleBold : numericStyleDouble);
-                    }
-                } else {
-                    // Otherwise, store as text
-                    cell.setCellValue(cellValue);
-                    if (bold) cell.setCellStyle(boldStyle);
-                    else if (cellValue.equals("gone")) {
-                        cell.setCellStyle(goneStyle);
-                    } else if (cellValue.equals("exists")) {
-                        cell.setCellStyle(existsStyle);
-                    }
-                }
+            Row dataRow = sheet.createRow(2 + rowIndex);
+            for (Table<?> table : tables) {
+                if (rowIndex < table.dataRows()) table.write(dataRow, rowIndex, styles, maxLengths);
             }
         }
 
-        // --- Auto-size all columns in this table + 20% extra padding ---
+        for (Table<?> table : tables) {
+            setColumnWidths(sheet, table, maxLengths);
+        }
+    }
+
+    private static void setColumnWidths(Sheet sheet, Table<?> table, Map<Integer, Integer> maxLengths) {
+        int startColumn = table.startColumn;
+        int numColumns = table.columns.size();
+
+        // --- Size all columns in this table to their longest value + 20% extra padding ---
         for (int i = 0; i < numColumns; i++) {
             int colIndex = startColumn + i;
-            sheet.autoSizeColumn(colIndex);
+            // Roughly 256 units per character, plus some space for the cell margins
+            int currentWidth = (maxLengths.getOrDefault(colIndex, 0) + 1) * CHARACTER_WIDTH;
 
             // Increase the width by 20% (capped at Excels max width)
-            int currentWidth = sheet.getColumnWidth(colIndex);
             int newWidth = (int) (currentWidth * 1.2);
-            if (newWidth > 255 * 256) {
-                newWidth = 255 * 256; // Excels max column width
+            if (newWidth > MAX_COLUMN_WIDTH) {
+                newWidth = MAX_COLUMN_WIDTH; // Excels max column width
             }
             sheet.setColumnWidth(colIndex, newWidth);
         }
@@ -245,44 +312,84 @@ public class ExcelExport {
             mergedWidth += sheet.getColumnWidth(i);
         }
         // Estimate required width: roughly 1.2 * 256 units per character (adjust as needed)
-        int requiredWidth = (int) (title.length() * 1.2 * 256);
+        int requiredWidth = (int) (table.title.length() * 1.2 * CHARACTER_WIDTH);
         if (requiredWidth > mergedWidth) {
             int extraPerColumn = (requiredWidth - mergedWidth) / numColumns;
             for (int i = startColumn; i < startColumn + numColumns; i++) {
                 int newColWidth = sheet.getColumnWidth(i) + extraPerColumn;
-                if (newColWidth > 255 * 256) {
-                    newColWidth = 255 * 256;
+                if (newColWidth > MAX_COLUMN_WIDTH) {
+                    newColWidth = MAX_COLUMN_WIDTH;
                 }
                 sheet.setColumnWidth(i, newColWidth);
             }
         }
     }
 
-    /**
-     * Returns the existing row if it exists, otherwise creates a new one.
-     */
-    private static Row getOrCreateRow(Sheet sheet, int rowIndex) {
-        Row row = sheet.getRow(rowIndex);
-        if (row == null) {
-            row = sheet.createRow(rowIndex);
-        }
-        return row;
+    private enum Style {
+        TITLE, HEADER, TEXT_BOLD, INTEGER, INTEGER_BOLD, DECIMAL, DECIMAL_BOLD, GONE, EXISTS
     }
 
     /**
-     * Tries to parse a string as a double, normalizing commas to periods first.
-     * Returns null if parsing fails.
+     * Creates every cell style of a workbook only once, as a workbook can hold at most 64000 styles.
      */
-    private static Double tryParseDouble(String value) {
-        if (value == null) {
-            return null;
+    private static final class StyleRegistry {
+        private final Workbook workbook;
+        private final Map<Style, CellStyle> styles = new EnumMap<>(Style.class);
+        private final DataFormat dataFormat;
+        private final Font boldFont;
+        private final Font titleFont;
+
+        private StyleRegistry(Workbook workbook) {
+            this.workbook = workbook;
+            dataFormat = workbook.createDataFormat();
+            boldFont = workbook.createFont();
+            boldFont.setBold(true);
+            titleFont = workbook.createFont();
+            titleFont.setBold(true);
+            titleFont.setFontHeight((short) (titleFont.getFontHeight() * 1.3));
+        }
+
+        private CellStyle get(Style style) {
+            return styles.computeIfAbsent(style, this::create);
         }
-        // Replace commas with periods in case of localized decimals (e.g. "1,23")
-        String normalized = value.trim().replace(',', '.');
-        try {
-            return Double.parseDouble(normalized);
-        } catch (NumberFormatException e) {
-            return null;
+
+        private CellStyle create(Style style) {
+            CellStyle cellStyle = workbook.createCellStyle();
+            switch (style) {
+                case TITLE -> {
+                    cellStyle.setFont(titleFont);
+                    cellStyle.setAlignment(HorizontalAlignment.CENTER);
+                }
+                case HEADER -> {
+                    cellStyle.setFont(boldFont);
+                    cellStyle.setAlignment(HorizontalAlignment.CENTER);
+                }
+                case TEXT_BOLD -> cellStyle.setFont(boldFont);
+                case INTEGER -> cellStyle.setDataFormat(dataFormat.getFormat("0"));
+                case INTEGER_BOLD -> {
+                    cellStyle.setDataFormat(dataFormat.getFormat("0"));
+                    cellStyle.setFont(boldFont);
+                }
+                // Numeric cells with exactly two decimals
+                case DECIMAL -> cellStyle.setDataFormat(dataFormat.getFormat("0.00"));
+                case DECIMAL_BOLD -> {
+                    cellStyle.setDataFormat(dataFormat.getFormat("0.00"));
+                    cellStyle.setFont(boldFont);
+                }
+                case GONE -> {
+                    cellStyle.setAlignment(HorizontalAlignment.RIGHT);
+                    XSSFColor redColor = new XSSFColor(new java.awt.Color(0xF14646), new DefaultIndexedColorMap());
+                    cellStyle.setFillForegroundColor(redColor); // Hex: #E63030, red
+                    cellStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+                }
+                case EXISTS -> {
+                    cellStyle.setAlignment(HorizontalAlignment.RIGHT);
+                    XSSFColor greenColor = new XSSFColor(new java.awt.Color(0x5CF345), new DefaultIndexedColorMap());
+                    cellStyle.setFillForegroundColor(greenColor); // Hex: #3BD424, green
+                    cellStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+                }
+            }
+            return cellStyle;
         }
     }
 }
@@ -0,0 +1,37 @@
+package net.justonedev;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+public enum ExportFormat {
+    EXCEL("xlsx", (file, repositories) -> ExcelExport.writeExcel(file.getPath(), repositories)),
+    CSV("csv", CsvExport::write),
+    JSON_LINES("jsonl", JsonLinesExport::write),
+    BINARY("gstats", BinaryExport::write);
+
+    private final String extension;
+    private final StatsExporter exporter;
+
+    ExportFormat(String extension, StatsExporter exporter) {
+        this.extension = extension;
+        this.exporter = exporter;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public StatsExporter getExporter() {
+        return exporter;
+    }
+
+    /**
+     * @return the format with this name or file extension, ignoring the case, or null if there is none.
+     */
+    public static ExportFormat fromName(String name) {
+        String normalized = name.trim().toLowerCase(Locale.ROOT).replace('-', '_');
+        return Arrays.stream(values())
+                .filter((format) -> format.extension.equals(normalized) || format.name().toLowerCase(Locale.ROOT).equals(normalized))
+                .findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,34 @@
+package net.justonedev;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * When the remotes of a repository are fetched before it is analysed.
+ */
+public enum FetchPolicy {
+    /**
+     * Always fetches all remotes before anything else.
+     */
+    ALWAYS,
+    /**
+     * Never fetches, only the local state of the repository is analysed.
+     */
+    SKIP,
+    /**
+     * Fetches only if the last fetch is older than {@link Config#FETCH_MAX_AGE_MINUTES}.
+     */
+    IF_OLDER,
+    /**
+     * Fetches while the working tree is blamed, reading the history waits for it. The same as {@link #ALWAYS} for a revision.
+     */
+    BACKGROUND;
+
+    /**
+     * @return the policy with the name, ignoring the case and allowing "-" for "_", or null if there is none.
+     */
+    public static FetchPolicy fromName(String name) {
+        String normalized = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+        return Arrays.stream(values()).filter((policy) -> policy.name().equals(normalized)).findFirst().orElse(null);
+    }
+}
@@ -1,34 +1,101 @@
 package net.justonedev;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public final class GitCommands {
 
+    // The running processes and their directories
+    private static final Map<Process, String> RUNNING = new ConcurrentHashMap<>();
+    private static final Set<String> CANCELLED = ConcurrentHashMap.newKeySet();
+
     private GitCommands() {}
 
-    public static List<String> runCommand(String directory, String command) {
-        List<String> output = new ArrayList<>();
-        try {
-            ProcessBuilder builder = new ProcessBuilder();
+    /**
+     * Stops all git processes of a repository, further commands fail until {@link #resetCancellation(String)}.
+     */
+    public static void cancel(String repository) {
+        CANCELLED.add(normalize(repository));
+        RUNNING.forEach((process, directory) -> {
+            if (isCancelled(directory)) destroy(process);
+        });
+    }
 
-            // Set platform-specific shell
-            if (System.getProperty("os.name").toLowerCase().contains("win")) {
-                builder.command("cmd.exe", "/c", command);
-            } else {
-                builder.command("sh", "-c", command);
-            }
+    /**
+     * @return whether the repository of the given directory was cancelled.
+     */
+    public static boolean isCancelled(String directory) {
+        return CANCELLED.contains(normalize(directory));
+    }
+
+    /**
+     * Stops the analysis of a cancelled repository between its phases.
+     */
+    public static void checkCancelled(String directory) {
+        if (isCancelled(directory)) throw new CancellationException("Cancelled: " + directory);
+    }
+
+    public static void resetCancellation(String repository) {
+        CANCELLED.remove(normalize(repository));
+    }
+
+    private static String normalize(String path) {
+        // Commands run in the repository itself, so only the exact same path belongs to it, not /repos/ab for /repos/a
+        return new File(path).getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    /**
+     * Starts a process, unless its repository was cancelled, and registers it to be stopped on cancellation.
+     */
+    private static Process start(ProcessBuilder builder, String directory, String command) throws IOException {
+        if (isCancelled(directory)) throw new IOException("Cancelled: " + command);
+        Process process = builder.start();
+        RUNNING.put(process, directory);
+        // The repository may have been cancelled while the process started
+        if (isCancelled(directory)) destroy(process);
+        return process;
+    }
+
+    private static void destroy(Process process) {
+        // The command runs inside a shell, which might not stop its children
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static void unregister(Process process) {
+        if (process != null) RUNNING.remove(process);
+    }
 
-            builder.directory(new File(directory));
+    public static List<String> runCommand(String directory, String command) {
+        List<String> output = new ArrayList<>();
+        Process process = null;
+        try (var slot = GitScheduler.INSTANCE.acquire(directory, command)) {
+            ProcessBuilder builder = createProcess(directory, command);
             builder.redirectErrorStream(true); // Merge stdout and stderr
 
-            Process process = builder.start();
+            long started = System.nanoTime();
+            process = start(builder, directory, command);
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            CountingInputStream stream = new CountingInputStream(process.getInputStream());
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
                     output.add(line);
@@ -36,12 +103,198 @@ public final class GitCommands {
             }
 
             process.waitFor();
-        } catch (IOException | InterruptedException e) {
+            Metrics.INSTANCE.recordProcess(directory, command, System.nanoTime() - started, stream.bytes, stream.lines);
+        } catch (IOException e) {
+            output.add("ERROR: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             output.add("ERROR: " + e.getMessage());
+        } finally {
+            unregister(process);
         }
         // Add empty line to trigger flush in processing
         output.add("");
         return output;
     }
 
+    /**
+     * Runs a command and passes every line of its output to the consumer while it runs. Standard error is collected.
+     */
+    public static CommandResult runCommand(String directory, String command, Consumer<String> lineConsumer) {
+        return runCommand(directory, command, List.of(), lineConsumer);
+    }
+
+    /**
+     * Like {@link #runCommand(String, String, Consumer)}, but writes the lines to standard input first.
+     */
+    public static CommandResult runCommand(String directory, String command, Collection<String> input, Consumer<String> lineConsumer) {
+        return runCommandStreaming(directory, command, input, (stream) -> {
+            // The stream itself is closed by runCommandStreaming
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineConsumer.accept(line);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #runCommand(String, String, Consumer)}, but stops the process once the consumer returns false.
+     */
+    public static CommandResult runCommandWhile(String directory, String command, Predicate<String> lineConsumer) {
+        return execute(directory, command, List.of(), (stream) -> {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!lineConsumer.test(line)) return false;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Runs a command and hands its standard output stream to the consumer, which is drained afterwards.
+     */
+    public static CommandResult runCommandStreaming(String directory, String command, StreamConsumer streamConsumer) {
+        return runCommandStreaming(directory, command, List.of(), streamConsumer);
+    }
+
+    /**
+     * Like {@link #runCommandStreaming(String, String, StreamConsumer)}, but writes the lines to standard input first.
+     */
+    public static CommandResult runCommandStreaming(String directory, String command, Collection<String> input, StreamConsumer streamConsumer) {
+        return execute(directory, command, input, (stream) -> {
+            streamConsumer.accept(stream);
+            return true;
+        });
+    }
+
+    private static CommandResult execute(String directory, String command, Collection<String> input, StreamReader streamReader) {
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        Process process = null;
+        // The slot is held until the output was read completely, as the process keeps running until then
+        try (var slot = GitScheduler.INSTANCE.acquire(directory, command)) {
+            long started = System.nanoTime();
+            process = start(createProcess(directory, command), directory, command);
+            final Process running = process;
+            Thread errorReader = Thread.ofVirtual().start(() -> readErrors(running.getErrorStream(), errors));
+            // Written on its own thread, as git may already produce output while it reads its input
+            Thread inputWriter = Thread.ofVirtual().start(() -> writeInput(running.getOutputStream(), input, errors));
+
+            CountingInputStream counter = new CountingInputStream(process.getInputStream());
+            try (InputStream stream = counter) {
+                if (streamReader.read(stream)) stream.transferTo(OutputStream.nullOutputStream());
+                else process.destroy();
+            }
+
+            int exitCode = process.waitFor();
+            inputWriter.join();
+            errorReader.join();
+            Metrics.INSTANCE.recordProcess(directory, command, System.nanoTime() - started, counter.bytes, counter.lines);
+            return new CommandResult(exitCode, List.copyOf(errors));
+        } catch (IOException | UncheckedIOException e) {
+            errors.add("ERROR: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errors.add("ERROR: " + e.getMessage());
+        } finally {
+            unregister(process);
+        }
+        return new CommandResult(CommandResult.EXIT_CODE_FAILED_TO_RUN, List.copyOf(errors));
+    }
+
+    private static void writeInput(OutputStream stream, Collection<String> input, List<String> errors) {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream))) {
+            for (String line : input) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            errors.add("ERROR: " + e.getMessage());
+        }
+    }
+
+    private static void readErrors(InputStream stream, List<String> errors) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                errors.add(line);
+            }
+        } catch (IOException e) {
+            errors.add("ERROR: " + e.getMessage());
+        }
+    }
+
+    private static ProcessBuilder createProcess(String directory, String command) {
+        ProcessBuilder builder = new ProcessBuilder();
+
+        // Set platform-specific shell
+        if (System.getProperty("os.name").toLowerCase().contains("win")) {
+            builder.command("cmd.exe", "/c", command);
+        } else {
+            builder.command("sh", "-c", command);
+        }
+
+        builder.directory(new File(directory));
+        return builder;
+    }
+
+    /**
+     * Counts the bytes and lines that were read, for the {@link Metrics}.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long bytes = 0, lines = 0;
+
+        private CountingInputStream(InputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                bytes++;
+                if (value == '\n') lines++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            for (int i = offset; i < offset + read; i++) {
+                if (buffer[i] == '\n') lines++;
+            }
+            if (read > 0) bytes += read;
+            return read;
+        }
+    }
+
+    /**
+     * Reads the standard output of a running process.
+     */
+    @FunctionalInterface
+    public interface StreamConsumer {
+        void accept(InputStream stream) throws IOException;
+    }
+
+    /**
+     * Reads the standard output of a running process and returns whether the rest of the output is still needed.
+     */
+    @FunctionalInterface
+    private interface StreamReader {
+        boolean read(InputStream stream) throws IOException;
+    }
+
+    /**
+     * The exit code, or {@link #EXIT_CODE_FAILED_TO_RUN}, and everything the process wrote to standard error.
+     */
+    public record CommandResult(int exitCode, List<String> errors) {
+        public static final int EXIT_CODE_FAILED_TO_RUN = -1;
+
+        public boolean isSuccess() {
+            return exitCode == 0;
+        }
+    }
+
 }
@@ -0,0 +1,163 @@
+package net.justonedev;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many git processes run at the same time, across all repositories. A free slot goes to the waiting
+ * repository with the fewest running processes, so a large repository cannot starve the others.
+ */
+final class GitScheduler {
+
+    static final GitScheduler INSTANCE = new GitScheduler(Config.MAX_GIT_PROCESSES);
+
+    private final int maxProcesses;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Waiter> queue = new ArrayList<>();
+    private final Map<String, Integer> runningPerRepository = new HashMap<>();
+    private int running = 0;
+
+    private long processes = 0, totalWaitNanos = 0, totalRunNanos = 0, maxRunNanos = 0;
+    private int maxQueueDepth = 0;
+    private String slowestCommand = "";
+
+    GitScheduler(int maxProcesses) {
+        this.maxProcesses = Math.max(1, maxProcesses);
+    }
+
+    /**
+     * Waits until a git process may be started in the repository. The slot has to be closed once the process ended.
+     */
+    Slot acquire(String repository, String command) throws InterruptedException {
+        long requested = System.nanoTime();
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(repository, lock.newCondition());
+            queue.add(waiter);
+            maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+            grant();
+            try {
+                while (!waiter.granted) waiter.condition.await();
+            } catch (InterruptedException e) {
+                if (waiter.granted) free(repository);
+                else queue.remove(waiter);
+                throw e;
+            }
+            long waited = System.nanoTime() - requested;
+            totalWaitNanos += waited;
+            return new Slot(repository, command, waited, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Slot slot) {
+        long runtime = System.nanoTime() - slot.started;
+        lock.lock();
+        try {
+            processes++;
+            totalRunNanos += runtime;
+            if (runtime > maxRunNanos) {
+                maxRunNanos = runtime;
+                slowestCommand = slot.command;
+            }
+            free(slot.repository);
+        } finally {
+            lock.unlock();
+        }
+        if (Config.LOG_GIT_PROCESSES) {
+            System.out.printf("[git] %.3f s (waited %.3f s) in %s: %s%n", runtime / 1e9, slot.waitNanos / 1e9, slot.repository, slot.command);
+        }
+    }
+
+    private void free(String repository) {
+        running--;
+        runningPerRepository.merge(repository, -1, (a, b) -> a + b == 0 ? null : a + b);
+        grant();
+    }
+
+    /**
+     * Hands out free slots. Has to be called while holding the lock.
+     */
+    private void grant() {
+        while (running < maxProcesses && !queue.isEmpty()) {
+            // The queue is in arrival order, so equally served repositories are handled first come, first served
+            Waiter next = queue.getFirst();
+            int nextRunning = runningPerRepository.getOrDefault(next.repository, 0);
+            for (Waiter waiter : queue) {
+                int waiterRunning = runningPerRepository.getOrDefault(waiter.repository, 0);
+                if (waiterRunning < nextRunning) {
+                    next = waiter;
+                    nextRunning = waiterRunning;
+                }
+            }
+            queue.remove(next);
+            running++;
+            runningPerRepository.merge(next.repository, 1, Integer::sum);
+            next.granted = true;
+            next.condition.signal();
+        }
+    }
+
+    /**
+     * @return the statistics of all processes that finished so far.
+     */
+    Statistics getStatistics() {
+        lock.lock();
+        try {
+            return new Statistics(processes, queue.size(), maxQueueDepth, totalWaitNanos, totalRunNanos, maxRunNanos, slowestCommand);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Waiter {
+        private final String repository;
+        private final Condition condition;
+        private boolean granted = false;
+
+        private Waiter(String repository, Condition condition) {
+            this.repository = repository;
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * The permission to run one git process. Closing it frees the slot for the next process.
+     */
+    final class Slot implements AutoCloseable {
+        private final String repository;
+        private final String command;
+        private final long waitNanos;
+        private final long started;
+
+        private Slot(String repository, String command, long waitNanos, long started) {
+            this.repository = repository;
+            this.command = command;
+            this.waitNanos = waitNanos;
+            this.started = started;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    /**
+     * The processes that finished so far, the current and highest queue depth, and the slowest process.
+     */
+    record Statistics(long processes, int queueDepth, int maxQueueDepth, long totalWaitNanos, long totalRunNanos, long maxRunNanos, String slowestCommand) {
+
+        @Override
+        public String toString() {
+            if (processes == 0) return "No git processes were run.";
+            return "%d git processes, at most %d waiting at once. Average wait %.3f s, average runtime %.3f s, slowest %.3f s: %s".formatted(
+                    processes, maxQueueDepth, totalWaitNanos / 1e9 / processes, totalRunNanos / 1e9 / processes, maxRunNanos / 1e9, slowestCommand);
+        }
+    }
+}
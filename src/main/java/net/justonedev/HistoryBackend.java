@@ -0,0 +1,15 @@
+package net.justonedev;
+
+/**
+ * How the history of a repository is read.
+ */
+public enum HistoryBackend {
+    /**
+     * Runs {@code git log --numstat} and parses its output.
+     */
+    GIT,
+    /**
+     * Reads the history straight from the object database, without starting git. Falls back to {@link #GIT} if it cannot.
+     */
+    OBJECT_STORE
+}
@@ -0,0 +1,277 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.MutableIntegerPair;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Determines the owner of every line by replaying the diffs of the first-parent history of a revision, oldest commit
+ * first, in a single {@code git log -p} process. See {@link BlameMode#HISTORY_REPLAY}.
+ */
+final class HistoryReplayBlame {
+
+    // The prefixes and signatures are set explicitly, so that the config of the user cannot change the parsed output
+    private static final String COMMAND = "git -c core.quotePath=false log \"%s\" --reverse --first-parent -m -M -p --unified=0 --no-color --no-ext-diff --src-prefix=a/ --dst-prefix=b/ --no-show-signature --pretty=format:\"commit %%H %%P%%x09%%an <%%ae>\"";
+    private static final String DEFAULT_REVISION = "HEAD";
+    private static final Pattern REGEX_COMMIT_TITLE = Pattern.compile("^commit ([\\da-z]+) ([\\da-z ]*)\t(.+)$");
+    private static final Pattern REGEX_HUNK = Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@.*$");
+
+    private final Map<String, List<OwnedLine>> files = new HashMap<>();
+    // Binary files and files with lines that were merged in, these need a real git blame
+    private final Set<String> fallbackFiles = new HashSet<>();
+
+    private String currentAuthor = null;
+    private boolean currentIsMerge = false;
+    private FileDiff currentDiff = null;
+    private int remainingOld = 0, remainingNew = 0;
+
+    private final AuthorAliases aliases;
+
+    private HistoryReplayBlame(AuthorAliases aliases) {
+        this.aliases = aliases;
+    }
+
+    /**
+     * Blames the files by their absolute paths. Binary files and files changed by merges are passed to the fallback.
+     */
+    static List<StatsGetter.StringMapWrapper> blame(String repoPath, String revision, Collection<String> filePaths, AuthorAliases aliases,
+                                                   Function<List<String>, List<StatsGetter.StringMapWrapper>> fallback) {
+        HistoryReplayBlame replay = new HistoryReplayBlame(aliases);
+        var result = GitCommands.runCommandStreaming(repoPath, COMMAND.formatted(revision == null ? DEFAULT_REVISION : revision), replay::read);
+        GitCommands.checkCancelled(repoPath);
+        if (!result.isSuccess()) {
+            System.out.printf("[%s] Warning: history replay exited with code %d, blame may be incomplete%n", repoPath, result.exitCode());
+        }
+
+        List<StatsGetter.StringMapWrapper> blames = new ArrayList<>(filePaths.size());
+        List<String> fallbackPaths = new ArrayList<>();
+        for (String filePath : filePaths) {
+            String file = StatsGetter.getRelativePath(repoPath, filePath);
+            if (replay.fallbackFiles.contains(file)) {
+                fallbackPaths.add(filePath);
+                continue;
+            }
+            Map<String, MutableIntegerPair> lineBlame = new HashMap<>();
+            Map<String, MutableIntegerPair> commentBlame = new HashMap<>();
+            for (OwnedLine line : replay.files.getOrDefault(file, List.of())) {
+                StatsGetter.addBlamedLine(lineBlame, commentBlame, line.author, line.comment, line.empty);
+            }
+            blames.add(new StatsGetter.StringMapWrapper(file, lineBlame, commentBlame));
+        }
+        if (!fallbackPaths.isEmpty()) {
+            System.out.printf("[%s] History replay left %d of %d files to git blame%n", new File(repoPath).getName(), fallbackPaths.size(), filePaths.size());
+            Metrics.INSTANCE.count(Metrics.Counter.BLAME_FALLBACKS, fallbackPaths.size());
+            blames.addAll(fallback.apply(fallbackPaths));
+        }
+        return blames;
+    }
+
+    /**
+     * Reads the output line by line. Only \n ends a line, as a lone \r may be part of the file content.
+     */
+    private void read(InputStream stream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c != '\n') {
+                line.append((char) c);
+                continue;
+            }
+            accept(line.toString());
+            line.setLength(0);
+        }
+        if (!line.isEmpty()) accept(line.toString());
+        finishFile();
+    }
+
+    private void accept(String line) {
+        if (remainingOld > 0 || remainingNew > 0) {
+            acceptHunkLine(line);
+            return;
+        }
+        if (line.startsWith("commit ")) {
+            var matcher = REGEX_COMMIT_TITLE.matcher(line);
+            if (matcher.matches()) {
+                finishFile();
+                currentAuthor = aliases.getName(matcher.group(3).trim());
+                currentIsMerge = matcher.group(2).trim().contains(" ");
+                return;
+            }
+        }
+        if (line.startsWith("diff --git ")) {
+            finishFile();
+            currentDiff = new FileDiff();
+            parseDiffHeader(line.substring(11));
+            return;
+        }
+        if (currentDiff == null) return;
+
+        if (line.startsWith("@@ ")) {
+            var matcher = REGEX_HUNK.matcher(line);
+            if (!matcher.matches()) return;
+            currentDiff.start();
+            int oldStart = Integer.parseInt(matcher.group(1));
+            int oldCount = matcher.group(2) == null ? 1 : Integer.parseInt(matcher.group(2));
+            remainingNew = matcher.group(4) == null ? 1 : Integer.parseInt(matcher.group(4));
+            remainingOld = oldCount;
+            // Without context, an empty range is given as the line before it
+            currentDiff.copyUntil(oldCount == 0 ? oldStart : oldStart - 1);
+            currentDiff.skip(oldCount);
+        } else if (line.startsWith("--- ")) {
+            currentDiff.oldPath = parsePath(line.substring(4));
+        } else if (line.startsWith("+++ ")) {
+            currentDiff.newPath = parsePath(line.substring(4));
+        } else if (line.startsWith("rename from ")) {
+            currentDiff.oldPath = unquote(line.substring(12));
+        } else if (line.startsWith("rename to ")) {
+            currentDiff.newPath = unquote(line.substring(10));
+        } else if (line.startsWith("new file mode")) {
+            currentDiff.created = true;
+        } else if (line.startsWith("deleted file mode")) {
+            currentDiff.deleted = true;
+        } else if (line.startsWith("Binary files ")) {
+            currentDiff.binary = true;
+        }
+    }
+
+    private void acceptHunkLine(String line) {
+        if (line.isEmpty()) return;
+        switch (line.charAt(0)) {
+            case '-' -> remainingOld--;
+            case '+' -> {
+                remainingNew--;
+                currentDiff.addedLines = true;
+                String code = line.substring(1).trim();
+                currentDiff.newLines.add(new OwnedLine(currentAuthor, StatsGetter.isCommentLine(code), code.isEmpty()));
+            }
+            default -> {
+                // "\ No newline at end of file" and anything unexpected does not count towards the hunk
+            }
+        }
+    }
+
+    private void finishFile() {
+        if (currentDiff == null) return;
+        FileDiff diff = currentDiff;
+        currentDiff = null;
+        remainingOld = 0;
+        remainingNew = 0;
+
+        String oldPath = diff.created ? null : diff.oldPath;
+        String newPath = diff.deleted ? null : diff.newPath;
+        boolean needsFallback = oldPath != null && fallbackFiles.remove(oldPath);
+        if (diff.binary) {
+            if (oldPath != null) files.remove(oldPath);
+            if (newPath != null) fallbackFiles.add(newPath);
+            return;
+        }
+        if (newPath == null) {
+            // Deleted, possibly without any hunks if the file was empty
+            if (oldPath != null) files.remove(oldPath);
+            return;
+        }
+        if (!diff.started) {
+            // No content changes, only a rename, a mode change or a new empty file
+            if (oldPath != null && !oldPath.equals(newPath)) {
+                var lines = files.remove(oldPath);
+                if (lines != null) files.put(newPath, lines);
+            } else if (diff.created) files.put(newPath, new ArrayList<>());
+            if (needsFallback) fallbackFiles.add(newPath);
+            return;
+        }
+        diff.copyUntil(diff.oldLines.size());
+        if (oldPath != null) files.remove(oldPath);
+        files.put(newPath, diff.newLines);
+        // The author of a merge did not write the lines it brings in from the other branch
+        if (needsFallback || (currentIsMerge && diff.addedLines)) fallbackFiles.add(newPath);
+    }
+
+    /**
+     * Reads the path from a "diff --git a/x b/x" header. Empty files and mode changes do not have any other
+     * path lines. The header is only unambiguous if both paths are equal, renames have their own lines.
+     */
+    private void parseDiffHeader(String paths) {
+        if (!paths.startsWith("a/") || paths.length() % 2 == 0) return;
+        int half = (paths.length() - 1) / 2;
+        String oldPath = paths.substring(2, half);
+        if (paths.startsWith(" b/", half) && paths.substring(half + 3).equals(oldPath)) {
+            currentDiff.oldPath = oldPath;
+            currentDiff.newPath = oldPath;
+        }
+    }
+
+    private String parsePath(String path) {
+        // Paths with spaces are terminated by a tab
+        if (path.endsWith("\t")) path = path.substring(0, path.length() - 1);
+        path = unquote(path);
+        if (path.equals("/dev/null")) return null;
+        // Strip the "a/" or "b/" prefix
+        return path.substring(2);
+    }
+
+    /**
+     * Removes the C-style quoting git applies to paths with special characters.
+     */
+    private static String unquote(String path) {
+        if (path.length() < 2 || path.charAt(0) != '"' || path.charAt(path.length() - 1) != '"') return path;
+        StringBuilder builder = new StringBuilder();
+        for (int i = 1; i < path.length() - 1; i++) {
+            char c = path.charAt(i);
+            if (c != '\\' || i + 1 >= path.length() - 1) {
+                builder.append(c);
+                continue;
+            }
+            char escaped = path.charAt(++i);
+            builder.append(switch (escaped) {
+                case 't' -> '\t';
+                case 'n' -> '\n';
+                default -> escaped;
+            });
+        }
+        return builder.toString();
+    }
+
+    private record OwnedLine(String author, boolean comment, boolean empty) { }
+
+    /**
+     * The diff of a single file within a commit. The new content is built while the hunks are read.
+     */
+    private final class FileDiff {
+        private String oldPath = null, newPath = null;
+        private boolean created = false, deleted = false, binary = false, started = false, addedLines = false;
+        private List<OwnedLine> oldLines = List.of();
+        private List<OwnedLine> newLines = List.of();
+        private int oldPosition = 0;
+
+        private void start() {
+            if (started) return;
+            started = true;
+            if (!created && oldPath != null) oldLines = files.getOrDefault(oldPath, List.of());
+            newLines = new ArrayList<>(oldLines.size() + 16);
+        }
+
+        private void copyUntil(int oldIndex) {
+            int end = Math.min(oldIndex, oldLines.size());
+            if (end > oldPosition) newLines.addAll(oldLines.subList(oldPosition, end));
+            oldPosition = Math.max(oldPosition, end);
+        }
+
+        private void skip(int count) {
+            oldPosition = Math.min(oldPosition + count, oldLines.size());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.MutableIntegerPair;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Blames files with {@code git blame --incremental}, which prints every commit once and the lines as ranges, so every
+ * author is resolved once per repository. Whether a line is a comment is read from the file itself, for a revision
+ * from the blobs of all files in one {@code git cat-file --batch}. Thread-safe.
+ */
+final class IncrementalBlame {
+
+    private static final String COMMAND = "git blame --incremental -- \"%s\"";
+    private static final String REVISION_COMMAND = "git blame --incremental \"%s\" -- \"%s\"";
+    private static final String BATCH_COMMAND = "git cat-file --batch";
+    private static final String BLOB_COMMAND = "git cat-file blob \"%s:%s\"";
+
+    // The kinds of lines, as flags. Empty lines are comment lines as well, see StatsGetter#isCommentLine
+    private static final byte COMMENT = 1, EMPTY = 2;
+
+    private final String repoPath;
+    private final String revision;
+    private final AuthorAliases aliases;
+    // The author every commit is counted as, shared by all files of the repository
+    private final Map<String, String> commitAuthors = new ConcurrentHashMap<>();
+    // The kind of every line of the files that were read ahead, removed once the file was blamed
+    private final Map<String, byte[]> lineKinds = new ConcurrentHashMap<>();
+
+    /**
+     * A null revision blames the working tree.
+     */
+    IncrementalBlame(String repoPath, String revision, AuthorAliases aliases) {
+        this.repoPath = repoPath;
+        this.revision = revision;
+        this.aliases = aliases;
+    }
+
+    /**
+     * Reads the given files of the revision in one process. Without a revision, files are read when they are blamed.
+     */
+    void readAhead(Collection<String> files) {
+        if (revision == null || files.isEmpty()) return;
+        var result = GitCommands.runCommandStreaming(repoPath, BATCH_COMMAND, files.stream().map((file) -> revision + ":" + file).toList(),
+                (stream) -> readBatch(stream, files.iterator()));
+        if (!result.isSuccess()) {
+            System.out.printf("[%s] Warning: git cat-file exited with code %d, files are read one by one%n", new File(repoPath).getName(), result.exitCode());
+        }
+    }
+
+    /**
+     * Reads the output of {@code git cat-file --batch}: for every requested object, in order, either a line
+     * "&lt;id&gt; &lt;type&gt; &lt;size&gt;" followed by the content and a newline, or a line "&lt;name&gt; missing".
+     */
+    private void readBatch(InputStream stream, Iterator<String> files) throws IOException {
+        InputStream in = new BufferedInputStream(stream);
+        String header;
+        while (files.hasNext() && (header = readHeader(in)) != null) {
+            String file = files.next();
+            String[] parts = header.split(" ");
+            // Missing and ambiguous names are not followed by any content
+            if (parts.length != 3 || parts[2].equals("missing") || parts[2].equals("ambiguous")) continue;
+            byte[] content = in.readNBytes(Integer.parseInt(parts[2]));
+            in.read();
+            if (parts[1].equals("blob")) lineKinds.put(file, classifyLines(content));
+        }
+    }
+
+    private static String readHeader(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) return null;
+            header.write(c);
+        }
+        return header.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Blames a file, relative to the repository. Files that cannot be blamed, like untracked ones, yield no lines.
+     */
+    StatsGetter.StringMapWrapper blame(String file) {
+        byte[] kinds = lineKinds.remove(file);
+        if (kinds == null) kinds = classifyLines(readFile(file));
+        OutputReader reader = newReader(file, kinds);
+        String command = revision == null ? COMMAND.formatted(file) : REVISION_COMMAND.formatted(revision, file);
+        GitCommands.runCommand(repoPath, command, reader);
+        Metrics.INSTANCE.count(Metrics.Counter.FILES_BLAMED, 1);
+        return reader.toBlame();
+    }
+
+    private byte[] readFile(String file) {
+        if (revision == null) {
+            try {
+                return Files.readAllBytes(new File(repoPath, file).toPath());
+            } catch (IOException e) {
+                return new byte[0];
+            }
+        }
+        byte[][] content = { new byte[0] };
+        GitCommands.runCommandStreaming(repoPath, BLOB_COMMAND.formatted(revision, file), (stream) -> content[0] = stream.readAllBytes());
+        return content[0];
+    }
+
+    /**
+     * Determines the kind of every line. Like git, only \n ends a line, and a last line without one counts as well.
+     */
+    static byte[] classifyLines(byte[] content) {
+        int lines = 0;
+        for (byte b : content) {
+            if (b == '\n') lines++;
+        }
+        if (content.length > 0 && content[content.length - 1] != '\n') lines++;
+
+        byte[] kinds = new byte[lines];
+        int start = 0;
+        for (int line = 0; line < lines; line++) {
+            int end = start;
+            while (end < content.length && content[end] != '\n') end++;
+            String code = new String(content, start, end - start, StandardCharsets.UTF_8).trim();
+            kinds[line] = (byte) ((StatsGetter.isCommentLine(code) ? COMMENT : 0) | (code.isEmpty() ? EMPTY : 0));
+            start = end + 1;
+        }
+        return kinds;
+    }
+
+    OutputReader newReader(String file, byte[] kinds) {
+        return new OutputReader(file, kinds);
+    }
+
+    /**
+     * Reads the output of {@code git blame --incremental} for a single file: per range a line
+     * "&lt;commit&gt; &lt;original line&gt; &lt;final line&gt; &lt;count&gt;", new commit metadata and "filename".
+     */
+    final class OutputReader implements Consumer<String> {
+
+        private final String file;
+        private final byte[] kinds;
+        private final Map<String, MutableIntegerPair> lineBlame = new HashMap<>();
+        private final Map<String, MutableIntegerPair> commentBlame = new HashMap<>();
+
+        private String commit = null, name = null, email = null;
+        private int finalLine = 0, count = 0;
+
+        private OutputReader(String file, byte[] kinds) {
+            this.file = file;
+            this.kinds = kinds;
+        }
+
+        @Override
+        public void accept(String line) {
+            if (commit == null) {
+                String[] parts = line.split(" ");
+                if (parts.length != 4) return;
+                commit = parts[0];
+                finalLine = Integer.parseInt(parts[2]);
+                count = Integer.parseInt(parts[3]);
+            } else if (line.startsWith("author ")) {
+                name = line.substring(7);
+            } else if (line.startsWith("author-mail ")) {
+                email = line.substring(12);
+            } else if (line.startsWith("filename ")) {
+                addRange(getAuthor());
+                commit = null;
+                name = null;
+                email = null;
+            }
+        }
+
+        private String getAuthor() {
+            String author = commitAuthors.get(commit);
+            if (author == null) {
+                // The metadata is printed the first time a commit appears in the output, so it is there if it is not cached yet
+                author = aliases.getName(email == null ? name : name + " " + email);
+                commitAuthors.put(commit, author);
+            }
+            return author;
+        }
+
+        private void addRange(String author) {
+            int comments = 0, empty = 0;
+            int end = Math.min(finalLine - 1 + count, kinds.length);
+            for (int line = finalLine - 1; line < end; line++) {
+                if ((kinds[line] & COMMENT) != 0) comments++;
+                if ((kinds[line] & EMPTY) != 0) empty++;
+            }
+            var current = lineBlame.computeIfAbsent(author, (key) -> new MutableIntegerPair());
+            var currentComment = commentBlame.computeIfAbsent(author, (key) -> new MutableIntegerPair());
+            current.incrementFirst(count);
+            current.incrementSecond(count - comments);
+            currentComment.incrementFirst(comments);
+            currentComment.incrementSecond(empty);
+        }
+
+        StatsGetter.StringMapWrapper toBlame() {
+            return new StatsGetter.StringMapWrapper(file, lineBlame, commentBlame);
+        }
+    }
+}
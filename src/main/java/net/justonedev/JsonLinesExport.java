@@ -0,0 +1,67 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.RepositoryStats;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes all stats as JSON Lines, one object per author or file. Every object has a "repository" and a "table" field,
+ * the remaining fields depend on the table.
+ */
+final class JsonLinesExport {
+
+    private JsonLinesExport() {}
+
+    static void write(File file, List<RepositoryStats> repositories) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            for (RepositoryStats repo : repositories) {
+                String repository = quote(repo.name());
+                for (StatsExporter.UserTable table : StatsExporter.UserTable.values()) {
+                    table.get(repo).forEachUser((author, additions, deletions, commits) -> writeLine(writer,
+                            "{\"repository\":%s,\"table\":\"%s\",\"author\":%s,\"additions\":%d,\"deletions\":%d,\"commits\":%d}\n"
+                                    .formatted(repository, table.getName(), quote(author), additions, deletions, commits)));
+                }
+                repo.fileStats().forEachFile((path, additions, deletions, lines, linesOfCode) -> writeLine(writer,
+                        "{\"repository\":%s,\"table\":\"%s\",\"file\":%s,\"additions\":%d,\"deletions\":%d,\"lines\":%d,\"linesOfCode\":%d}\n"
+                                .formatted(repository, StatsExporter.UserTable.FILES, quote(path), additions, deletions, lines, linesOfCode)));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeLine(Writer writer, String line) {
+        try {
+            writer.write(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String quote(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) builder.append("\\u%04x".formatted((int) c));
+                    else builder.append(c);
+                }
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,141 @@
+package net.justonedev;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the added and deleted lines between two versions of a file like {@code git diff --numstat}, with the diff
+ * algorithm of Myers. Very different versions are only estimated, like git does.
+ */
+final class LineDiff {
+
+    // Like git, a file with a NUL byte in its first 8000 bytes is binary
+    private static final int BINARY_CHECK_LENGTH = 8000;
+    // The number of edits after which the search for the shortest edit script gives up, at least, like git's XDL_MAX_COST_MIN
+    private static final int MIN_MAX_COST = 256;
+
+    private LineDiff() {}
+
+    static boolean isBinary(byte[] data) {
+        for (int i = 0, end = Math.min(data.length, BINARY_CHECK_LENGTH); i < end; i++) {
+            if (data[i] == 0) return true;
+        }
+        return false;
+    }
+
+    static int countLines(byte[] data) {
+        int lines = 0;
+        for (byte b : data) {
+            if (b == '\n') lines++;
+        }
+        if (data.length > 0 && data[data.length - 1] != '\n') lines++;
+        return lines;
+    }
+
+    /**
+     * @return the added lines at index 0 and the deleted lines at index 1.
+     */
+    static int[] count(byte[] oldData, byte[] newData) {
+        int[] oldStarts = lineStarts(oldData), newStarts = lineStarts(newData);
+        int oldLines = oldStarts.length - 1, newLines = newStarts.length - 1;
+
+        int prefix = 0;
+        while (prefix < oldLines && prefix < newLines && sameLine(oldData, oldStarts, prefix, newData, newStarts, prefix)) prefix++;
+        int suffix = 0;
+        while (suffix < oldLines - prefix && suffix < newLines - prefix
+                && sameLine(oldData, oldStarts, oldLines - 1 - suffix, newData, newStarts, newLines - 1 - suffix)) suffix++;
+
+        // Number every distinct line, remembering on which sides it occurs
+        Map<Line, int[]> numbers = new HashMap<>();
+        int[] oldIds = new int[oldLines - prefix - suffix], newIds = new int[newLines - prefix - suffix];
+        for (int i = 0; i < oldIds.length; i++) {
+            int[] entry = numbers.computeIfAbsent(new Line(oldData, oldStarts[prefix + i], oldStarts[prefix + i + 1]), (key) -> new int[] { numbers.size(), 0 });
+            entry[1] |= 1;
+            oldIds[i] = entry[0];
+        }
+        for (int i = 0; i < newIds.length; i++) {
+            int[] entry = numbers.computeIfAbsent(new Line(newData, newStarts[prefix + i], newStarts[prefix + i + 1]), (key) -> new int[] { numbers.size(), 0 });
+            entry[1] |= 2;
+            newIds[i] = entry[0];
+        }
+        // Lines that only occur on one side are always changed, leaving them out keeps the search small
+        boolean[] onBothSides = new boolean[numbers.size()];
+        numbers.values().forEach((entry) -> onBothSides[entry[0]] = entry[1] == 3);
+        int[] oldCommon = Arrays.stream(oldIds).filter((id) -> onBothSides[id]).toArray();
+        int[] newCommon = Arrays.stream(newIds).filter((id) -> onBothSides[id]).toArray();
+
+        int distance = editDistance(oldCommon, newCommon);
+        int deleted = oldIds.length - oldCommon.length + (distance - newCommon.length + oldCommon.length) / 2;
+        int added = newIds.length - newCommon.length + (distance + newCommon.length - oldCommon.length) / 2;
+        return new int[] { added, deleted };
+    }
+
+    /**
+     * @return the number of insertions and deletions of the shortest edit script, or of a slightly longer one if the
+     * shortest one costs too much to find.
+     */
+    private static int editDistance(int[] a, int[] b) {
+        int n = a.length, m = b.length;
+        if (n == 0 || m == 0) return n + m;
+        int max = n + m;
+        int maxCost = Math.max(MIN_MAX_COST, (int) Math.sqrt(max));
+        int[] furthest = new int[2 * max + 2];
+        for (int d = 0; d <= max; d++) {
+            if (d > maxCost) return estimateDistance(furthest, max, d - 1, n, m);
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && furthest[max + k - 1] < furthest[max + k + 1]) ? furthest[max + k + 1] : furthest[max + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[x] == b[y]) {
+                    x++;
+                    y++;
+                }
+                furthest[max + k] = x;
+                if (x >= n && y >= m) return d;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Continues from the point that got furthest with the given number of edits, counting all lines after it as
+     * changed.
+     */
+    private static int estimateDistance(int[] furthest, int max, int d, int n, int m) {
+        int best = max;
+        for (int k = -d; k <= d; k += 2) {
+            int x = furthest[max + k], y = x - k;
+            if (x <= n && y >= 0 && y <= m) best = Math.min(best, d + n - x + m - y);
+        }
+        return best;
+    }
+
+    private static int[] lineStarts(byte[] data) {
+        int[] starts = new int[countLines(data) + 1];
+        int line = 1;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n' && line < starts.length) starts[line++] = i + 1;
+        }
+        starts[starts.length - 1] = data.length;
+        return starts;
+    }
+
+    private static boolean sameLine(byte[] a, int[] aStarts, int aLine, byte[] b, int[] bStarts, int bLine) {
+        return Arrays.equals(a, aStarts[aLine], aStarts[aLine + 1], b, bStarts[bLine], bStarts[bLine + 1]);
+    }
+
+    private record Line(byte[] data, int start, int end) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Line line && Arrays.equals(data, start, end, line.data, line.start, line.end);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 1;
+            for (int i = start; i < end; i++) hash = 31 * hash + data[i];
+            return hash;
+        }
+    }
+}
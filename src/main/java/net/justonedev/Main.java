@@ -3,42 +3,196 @@ package net.justonedev;
 import net.justonedev.statswrapper.RepositoryStats;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
 
 public class Main {
 
     public static final String TITLE_ALL_PROJECTS = "All Projects";
     public static final String FILENAME = "repository-stats";
+    private static final String METRICS_JSON_SUFFIX = "-metrics.json";
+    private static final String METRICS_PROMETHEUS_SUFFIX = "-metrics.prom";
+    private static final String FORMAT_ARGUMENT = "--format";
+    private static final String MANIFEST_ARGUMENT = "--manifest";
+    private static final String PARALLEL_ARGUMENT = "--parallel";
+    private static final String TIMEOUT_ARGUMENT = "--timeout";
+    private static final String FETCH_ARGUMENT = "--fetch";
+    private static final String FORMAT_NAMES = Arrays.stream(ExportFormat.values()).map(ExportFormat::getExtension).collect(Collectors.joining(", "));
+    private static final String FETCH_POLICY_NAMES = Arrays.stream(FetchPolicy.values()).map((policy) -> policy.name().toLowerCase(Locale.ROOT).replace('_', '-')).collect(Collectors.joining(", "));
 
     public static void main(String[] args) {
         System.out.println("Hello, World!");
+        Arguments arguments = parseArguments(args);
+        if (arguments == null) return;
 
-        List<RepositoryStats> repositories = readInput().parallelStream().map((path) -> new StatsGetter().getAllGitStats(path)).toList();
+        List<BatchManifest.Entry> entries = arguments.entries();
+        if (!arguments.batch()) {
+            entries = readInput().stream().map((path) -> BatchManifest.Entry.of(path, arguments.fetchPolicy(), arguments.timeoutMinutes())).toList();
+        }
+        // The repositories are analysed on virtual threads, the GitScheduler shares the git processes between them
+        List<RepositoryStats> repositories = RepositoryRunner.run(entries, arguments.parallel());
         if (repositories.isEmpty()) {
             System.out.println("No repositories given.");
             return;
         }
+        System.out.println(GitScheduler.INSTANCE.getStatistics());
 
         if (repositories.size() > 1) {
             System.out.println("More than one repository found. Adding an \"All Projects\" sheet...\"");
-            RepositoryStats total = RepositoryStats.accumulate(TITLE_ALL_PROJECTS, repositories);
+            RepositoryStats total;
+            try (var phase = Metrics.INSTANCE.phase(Metrics.ALL_REPOSITORIES, Metrics.Phase.MERGE)) {
+                total = RepositoryStats.accumulate(TITLE_ALL_PROJECTS, repositories);
+            }
             List<RepositoryStats> allRepos = new ArrayList<>(repositories);
             allRepos.add(total);
             repositories = allRepos;
         }
-        System.out.println("Generating Excel File...");
         int index = 1;
         String filename = FILENAME;
-        while (new File(filename + ".xlsx").exists()) {
+        Set<ExportFormat> formats = arguments.formats();
+        while (anyExists(filename, formats)) {
             filename = "%s-%d".formatted(FILENAME, index++);
         }
-        ExcelExport.writeExcel(filename, repositories);
-        System.out.printf("Done! Exported Git Stats to %s.xlsx%n", filename);
+        for (ExportFormat format : formats) {
+            File file = new File("%s.%s".formatted(filename, format.getExtension()));
+            System.out.printf("Generating %s...%n", file.getName());
+            try (var phase = Metrics.INSTANCE.phase(Metrics.ALL_REPOSITORIES, Metrics.Phase.EXPORT)) {
+                format.getExporter().export(file, repositories);
+            } catch (IOException e) {
+                System.out.printf("Error: Could not write %s: %s%n", file.getName(), e.getMessage());
+                continue;
+            }
+            System.out.printf("Done! Exported Git Stats to %s%n", file.getName());
+        }
+        if (Config.WRITE_METRICS) writeMetrics(filename);
+    }
+
+    private static void writeMetrics(String filename) {
+        File json = new File(filename + METRICS_JSON_SUFFIX);
+        File prometheus = new File(filename + METRICS_PROMETHEUS_SUFFIX);
+        try {
+            Metrics.INSTANCE.writeJson(json);
+            Metrics.INSTANCE.writePrometheus(prometheus);
+            System.out.printf("Wrote metrics to %s and %s%n", json.getName(), prometheus.getName());
+        } catch (IOException e) {
+            System.out.printf("Error: Could not write metrics: %s%n", e.getMessage());
+        }
+    }
+
+    private static boolean anyExists(String filename, Set<ExportFormat> formats) {
+        return formats.stream().anyMatch((format) -> new File("%s.%s".formatted(filename, format.getExtension())).exists());
+    }
+
+    /**
+     * The settings of a run. Without batch, the repositories are read from the standard input.
+     */
+    private record Arguments(Set<ExportFormat> formats, List<BatchManifest.Entry> entries, boolean batch, int parallel, FetchPolicy fetchPolicy, long timeoutMinutes) {}
+
+    /**
+     * @return the settings, or null if the arguments are invalid.
+     */
+    private static Arguments parseArguments(String[] args) {
+        Set<ExportFormat> formats = new LinkedHashSet<>();
+        List<String> manifests = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        int parallel = Config.MAX_PARALLEL_REPOSITORIES;
+        long timeoutMinutes = Config.REPOSITORY_TIMEOUT_MINUTES;
+        FetchPolicy fetchPolicy = Config.FETCH_POLICY;
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                paths.add(args[i]);
+                continue;
+            }
+            int separator = args[i].indexOf('=');
+            String name = separator < 0 ? args[i] : args[i].substring(0, separator);
+            String value;
+            if (separator >= 0) value = args[i].substring(separator + 1);
+            else if (i + 1 < args.length) value = args[++i];
+            else {
+                System.out.printf("Missing value for \"%s\"%n", name);
+                return null;
+            }
+            try {
+                switch (name) {
+                    case FORMAT_ARGUMENT -> {
+                        for (String formatName : value.split(",")) {
+                            ExportFormat format = ExportFormat.fromName(formatName);
+                            if (format == null) {
+                                System.out.printf("Unknown export format \"%s\", available are: %s%n", formatName, FORMAT_NAMES);
+                                return null;
+                            }
+                            formats.add(format);
+                        }
+                    }
+                    case MANIFEST_ARGUMENT -> manifests.add(value);
+                    case PARALLEL_ARGUMENT -> parallel = Integer.parseInt(value);
+                    case TIMEOUT_ARGUMENT -> timeoutMinutes = Long.parseLong(value);
+                    case FETCH_ARGUMENT -> {
+                        fetchPolicy = FetchPolicy.fromName(value);
+                        if (fetchPolicy == null) {
+                            System.out.printf("Unknown fetch policy \"%s\", available are: %s%n", value, FETCH_POLICY_NAMES);
+                            return null;
+                        }
+                    }
+                    default -> {
+                        System.out.printf("Unknown argument \"%s\". Usage: [%s <%s>[,...]] [%s <file>] [%s <repositories>] [%s <minutes>] [%s <%s>] [repository...]%n",
+                                name, FORMAT_ARGUMENT, FORMAT_NAMES, MANIFEST_ARGUMENT, PARALLEL_ARGUMENT, TIMEOUT_ARGUMENT, FETCH_ARGUMENT, FETCH_POLICY_NAMES);
+                        return null;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                System.out.printf("Expected a number for \"%s\", got \"%s\"%n", name, value);
+                return null;
+            }
+        }
+        if (formats.isEmpty()) formats.add(ExportFormat.EXCEL);
+
+        List<BatchManifest.Entry> entries = new ArrayList<>();
+        for (String path : paths) entries.add(BatchManifest.Entry.of(expandHome(path), fetchPolicy, timeoutMinutes));
+        for (String manifest : manifests) {
+            try {
+                entries.addAll(BatchManifest.read(new File(expandHome(manifest)), fetchPolicy, timeoutMinutes));
+            } catch (IOException e) {
+                System.out.printf("Error: Could not read manifest %s: %s%n", manifest, e.getMessage());
+                return null;
+            }
+        }
+        return new Arguments(formats, withoutInvalidEntries(entries), !paths.isEmpty() || !manifests.isEmpty(), parallel, fetchPolicy, timeoutMinutes);
+    }
+
+    private static List<BatchManifest.Entry> withoutInvalidEntries(List<BatchManifest.Entry> entries) {
+        Set<String> usedDirs = new HashSet<>();
+        List<BatchManifest.Entry> valid = new ArrayList<>();
+        for (BatchManifest.Entry entry : entries) {
+            if (!usedDirs.add(entry.path())) {
+                System.out.printf("Project \"%s\" is already registered, skipping...%n", entry.path());
+            } else if (!isRepository(new File(entry.path()))) {
+                System.out.printf("Folder \"%s\" does not have a Git Repository, skipping...%n", entry.path());
+            } else {
+                valid.add(entry);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * @return whether the folder is a repository with a working tree or a bare repository.
+     */
+    private static boolean isRepository(File folder) {
+        return new File(folder, ".git").exists() || (new File(folder, "HEAD").isFile() && new File(folder, "objects").isDirectory());
+    }
+
+    static String expandHome(String path) {
+        return path.startsWith("~") ? path.replace("~", System.getProperty("user.home")) : path;
     }
 
     private static final String SEND_MESSAGE = "Enter one or more project paths (leave empty to generate stats):";
@@ -52,18 +206,14 @@ public class Main {
             if (line.isEmpty()) break;
 
             for (String dir : parseDirectories(line)) {
-                dir = dir.trim();
+                dir = expandHome(dir.trim());
                 if (dir.isEmpty()) continue;
-                if (dir.startsWith("~")) {
-                    String home = System.getProperty("user.home");
-                    dir = dir.replace("~", home);
-                }
                 if (!usedDirs.add(dir)) {
                     System.out.printf("Project \"%s\" is already registered, skipping...%n", dir);
                     continue;
                 }
                 File f = new File(dir);
-                if (new File(f, ".git").exists()) {
+                if (isRepository(f)) {
                     repositories.add(dir);
                     System.out.println("Added Project: " + f.getName());
                 } else System.out.printf("Folder \"%s\" does not have a Git Repository. Please try again.%n", dir);
@@ -73,7 +223,7 @@ public class Main {
         return repositories;
     }
 
-    private static List<String> parseDirectories(String path) {
+    static List<String> parseDirectories(String path) {
         if (path.isEmpty()) return new ArrayList<>();
         List<String> directories = new ArrayList<>();
         char currentDelimiter = 0;
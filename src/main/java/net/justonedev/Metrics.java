@@ -0,0 +1,281 @@
+package net.justonedev;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the time, git processes and counters per repository and phase, and writes them as JSON and for Prometheus.
+ * The current repository and phase are inherited by threads started inside a phase. The time of a phase does not
+ * include the phases nested in it.
+ */
+final class Metrics {
+
+    static final Metrics INSTANCE = new Metrics();
+    // The repository of phases that concern all repositories, like the export
+    static final String ALL_REPOSITORIES = "all";
+
+    // Upper bounds of the latency histogram buckets in seconds
+    private static final double[] BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300 };
+    private static final int SLOWEST_PROCESSES = 5;
+
+    private final InheritableThreadLocal<Scope> current = new InheritableThreadLocal<>();
+    private final Map<String, Map<Phase, PhaseMetrics>> repositories = new ConcurrentHashMap<>();
+    private final Map<String, List<Process>> slowestProcesses = new ConcurrentHashMap<>();
+
+    enum Phase {
+        FETCH("fetch"),
+        LOG("log"),
+        MAIN_LOG("main_log"),
+        FILE_DISCOVERY("file_discovery"),
+        BLAME("blame"),
+        MERGE("merge"),
+        EXPORT("export"),
+        // Everything that runs outside any phase
+        OTHER("other");
+
+        private final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    enum Counter {
+        GIT_PROCESSES("git_processes"),
+        BYTES_READ("bytes_read"),
+        LINES_READ("lines_read"),
+        COMMITS_PARSED("commits_parsed"),
+        FILES_BLAMED("files_blamed"),
+        BLAME_CACHE_HITS("blame_cache_hits"),
+        // Files that history replay could not attribute and left to git blame
+        BLAME_FALLBACKS("blame_fallbacks");
+
+        private final String name;
+
+        Counter(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Starts a phase of a repository on the current thread. Closing the returned scope ends it.
+     */
+    Scope phase(String repository, Phase phase) {
+        Scope scope = new Scope(repository, phase, current.get());
+        current.set(scope);
+        return scope;
+    }
+
+    /**
+     * Adds to a counter of the current repository and phase.
+     */
+    void count(Counter counter, long value) {
+        get().counters.get(counter).add(value);
+    }
+
+    /**
+     * Records a git process of the current phase, or of the repository of the directory if there is none.
+     */
+    void recordProcess(String directory, String command, long nanos, long bytes, long lines) {
+        Scope scope = current.get();
+        String repository = scope == null ? directory : scope.repository;
+        Phase phase = scope == null ? Phase.OTHER : scope.phase;
+        PhaseMetrics metrics = get(repository, phase);
+        metrics.counters.get(Counter.GIT_PROCESSES).increment();
+        metrics.counters.get(Counter.BYTES_READ).add(bytes);
+        metrics.counters.get(Counter.LINES_READ).add(lines);
+        metrics.histogram.record(nanos);
+
+        List<Process> slowest = slowestProcesses.computeIfAbsent(repository, (key) -> new ArrayList<>());
+        synchronized (slowest) {
+            if (slowest.size() < SLOWEST_PROCESSES || slowest.getLast().nanos < nanos) {
+                slowest.add(new Process(phase, command, nanos));
+                slowest.sort(Comparator.comparingLong(Process::nanos).reversed());
+                if (slowest.size() > SLOWEST_PROCESSES) slowest.removeLast();
+            }
+        }
+    }
+
+    private PhaseMetrics get() {
+        Scope scope = current.get();
+        return scope == null ? get(ALL_REPOSITORIES, Phase.OTHER) : get(scope.repository, scope.phase);
+    }
+
+    private PhaseMetrics get(String repository, Phase phase) {
+        return repositories.computeIfAbsent(repository, (key) -> new ConcurrentHashMap<>()).computeIfAbsent(phase, (key) -> new PhaseMetrics());
+    }
+
+    /**
+     * Writes all metrics as JSON. The repositories are sorted by their total time, slowest first.
+     */
+    void writeJson(File file) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("{\"buckets\":[");
+            for (int i = 0; i < BUCKETS.length; i++) writer.write((i == 0 ? "" : ",") + formatNumber(BUCKETS[i]));
+            writer.write("],\"repositories\":[");
+            boolean firstRepository = true;
+            for (String repository : getRepositoriesSlowestFirst()) {
+                Map<Phase, PhaseMetrics> phases = repositories.get(repository);
+                writer.write("%s\n{\"repository\":%s,\"seconds\":%s,\"phases\":[".formatted(firstRepository ? "" : ",",
+                        JsonLinesExport.quote(repository), formatNumber(getTotalNanos(phases) / 1e9)));
+                firstRepository = false;
+                boolean firstPhase = true;
+                for (var entry : new EnumMap<>(phases).entrySet()) {
+                    PhaseMetrics metrics = entry.getValue();
+                    StringBuilder phase = new StringBuilder(firstPhase ? "" : ",");
+                    phase.append("{\"phase\":\"").append(entry.getKey().name).append("\",\"seconds\":").append(formatNumber(metrics.nanos.get() / 1e9));
+                    for (Counter counter : Counter.values()) phase.append(",\"").append(counter.name).append("\":").append(metrics.counters.get(counter).sum());
+                    phase.append(",\"git_seconds\":{\"sum\":").append(formatNumber(metrics.histogram.sumNanos.get() / 1e9)).append(",\"buckets\":[");
+                    for (int i = 0; i <= BUCKETS.length; i++) phase.append(i == 0 ? "" : ",").append(metrics.histogram.buckets.get(i));
+                    writer.write(phase.append("]}}").toString());
+                    firstPhase = false;
+                }
+                writer.write("],\"slowest_git_processes\":[");
+                List<Process> slowest = slowestProcesses.getOrDefault(repository, List.of());
+                synchronized (slowest) {
+                    for (int i = 0; i < slowest.size(); i++) {
+                        Process process = slowest.get(i);
+                        writer.write("%s{\"phase\":\"%s\",\"seconds\":%s,\"command\":%s}".formatted(i == 0 ? "" : ",", process.phase.name,
+                                formatNumber(process.nanos / 1e9), JsonLinesExport.quote(process.command)));
+                    }
+                }
+                writer.write("]}");
+            }
+            writer.write("\n]}\n");
+        }
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text format, e.g. for the textfile collector of the node exporter.
+     */
+    void writePrometheus(File file) throws IOException {
+        List<String> repositoryNames = getRepositoriesSlowestFirst();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("# HELP gitstats_phase_seconds Time spent per repository and phase, without nested phases.\n# TYPE gitstats_phase_seconds gauge\n");
+            forEachPhase(repositoryNames, (labels, metrics) -> "gitstats_phase_seconds{%s} %s\n".formatted(labels, formatNumber(metrics.nanos.get() / 1e9)), writer);
+            for (Counter counter : Counter.values()) {
+                writer.write("# TYPE gitstats_%s_total counter\n".formatted(counter.name));
+                forEachPhase(repositoryNames, (labels, metrics) -> "gitstats_%s_total{%s} %d\n".formatted(counter.name, labels, metrics.counters.get(counter).sum()), writer);
+            }
+            writer.write("# HELP gitstats_git_process_seconds Runtime of the git processes.\n# TYPE gitstats_git_process_seconds histogram\n");
+            forEachPhase(repositoryNames, (labels, metrics) -> {
+                StringBuilder lines = new StringBuilder();
+                long cumulative = 0;
+                for (int i = 0; i <= BUCKETS.length; i++) {
+                    cumulative += metrics.histogram.buckets.get(i);
+                    String bound = i < BUCKETS.length ? formatNumber(BUCKETS[i]) : "+Inf";
+                    lines.append("gitstats_git_process_seconds_bucket{%s,le=\"%s\"} %d\n".formatted(labels, bound, cumulative));
+                }
+                lines.append("gitstats_git_process_seconds_sum{%s} %s\n".formatted(labels, formatNumber(metrics.histogram.sumNanos.get() / 1e9)));
+                lines.append("gitstats_git_process_seconds_count{%s} %d\n".formatted(labels, cumulative));
+                return lines.toString();
+            }, writer);
+        }
+    }
+
+    private void forEachPhase(List<String> repositoryNames, MetricFormatter formatter, Writer writer) throws IOException {
+        for (String repository : repositoryNames) {
+            for (var entry : new EnumMap<>(repositories.get(repository)).entrySet()) {
+                String labels = "repository=\"%s\",phase=\"%s\"".formatted(escapeLabel(repository), entry.getKey().name);
+                writer.write(formatter.format(labels, entry.getValue()));
+            }
+        }
+    }
+
+    private List<String> getRepositoriesSlowestFirst() {
+        return repositories.keySet().stream()
+                .sorted(Comparator.comparingLong((String repository) -> getTotalNanos(repositories.get(repository))).reversed())
+                .toList();
+    }
+
+    private static long getTotalNanos(Map<Phase, PhaseMetrics> phases) {
+        return phases.values().stream().mapToLong((metrics) -> metrics.nanos.get()).sum();
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String formatNumber(double value) {
+        return String.format(Locale.ROOT, "%.6f", value).replaceAll("\\.?0+$", "");
+    }
+
+    @FunctionalInterface
+    private interface MetricFormatter {
+        String format(String labels, PhaseMetrics metrics);
+    }
+
+    private record Process(Phase phase, String command, long nanos) {}
+
+    private static final class PhaseMetrics {
+        private final AtomicLong nanos = new AtomicLong();
+        private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+        private final Histogram histogram = new Histogram();
+
+        private PhaseMetrics() {
+            for (Counter counter : Counter.values()) counters.put(counter, new LongAdder());
+        }
+    }
+
+    private static final class Histogram {
+        // One more bucket than bounds, for everything above the last bound
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1);
+        private final AtomicLong sumNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            double seconds = nanos / 1e9;
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) bucket++;
+            buckets.incrementAndGet(bucket);
+            sumNanos.addAndGet(nanos);
+        }
+    }
+
+    /**
+     * A running phase. Closing it records its time and makes the enclosing phase the current one again.
+     */
+    final class Scope implements AutoCloseable {
+        private final String repository;
+        private final Phase phase;
+        private final Scope parent;
+        private final long started = System.nanoTime();
+        // The time of the phases inside this one, which is not counted towards this phase
+        private final AtomicLong nestedNanos = new AtomicLong();
+
+        private Scope(String repository, Phase phase, Scope parent) {
+            this.repository = repository;
+            this.phase = phase;
+            this.parent = parent;
+        }
+
+        /**
+         * @return the seconds since the phase started, including nested phases.
+         */
+        double seconds() {
+            return Math.round((System.nanoTime() - started) / 1000000d) / 1000d;
+        }
+
+        @Override
+        public void close() {
+            long elapsed = System.nanoTime() - started;
+            get(repository, phase).nanos.addAndGet(Math.max(0, elapsed - nestedNanos.get()));
+            if (parent != null) parent.nestedNanos.addAndGet(elapsed);
+            current.set(parent);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package net.justonedev;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Parses the output of {@code git log -z --numstat} with {@link #LOG_FORMAT} on a byte buffer. Every distinct path and
+ * author is decoded once, so reading a numstat line does not allocate anything.
+ */
+final class NumstatParser {
+
+    /**
+     * The pretty format the log has to be printed with. The parents are only used to detect merge commits.
+     */
+    static final String LOG_FORMAT = "commit %H %P%x09%an <%ae>";
+    private static final byte COMMIT_START = 'c';
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+    private static final int END_OF_STREAM = -1;
+
+    private final Listener listener;
+    private final StringTable paths = new StringTable();
+    private final StringTable authors = new StringTable();
+    private final CommitId commit = new CommitId();
+    private InputStream in;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int position = 0, limit = 0;
+
+    NumstatParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Parses the whole stream. Can be called multiple times, paths and authors stay interned between calls.
+     */
+    void parse(InputStream stream) throws IOException {
+        in = stream;
+        position = 0;
+        limit = 0;
+        while (true) {
+            // Commits are separated by an additional \0
+            while (ensureAvailable() && buffer[position] == 0) position++;
+            if (position >= limit) return;
+            if (startsWithCommit()) parseCommit();
+            else parseChange();
+        }
+    }
+
+    private void parseCommit() throws IOException {
+        // Skip "commit "
+        int end = find((byte) ' ', (byte) ' ');
+        position = Math.min(end + 1, limit);
+        end = find((byte) ' ', (byte) ' ');
+        // Copied, as reading further may move the buffer
+        commit.set(buffer, position, end);
+        position = Math.min(end + 1, limit);
+
+        end = find((byte) '\t', (byte) '\t');
+        int parents = 0;
+        for (int i = position; i < end; i++) {
+            if (buffer[i] == ' ') parents++;
+        }
+        // %P lists the parents separated by spaces, more than one parent is a merge
+        boolean merge = parents > 0;
+        position = Math.min(end + 1, limit);
+
+        // Followed by a newline if there are changes, by \0 otherwise
+        end = find((byte) '\n', (byte) 0);
+        String author = authors.get(buffer, position, end);
+        position = Math.min(end + 1, limit);
+        listener.onCommit(commit, merge, author);
+    }
+
+    private void parseChange() throws IOException {
+        int end = find((byte) '\t', (byte) 0);
+        int additions = parseCount(end);
+        position = Math.min(end + 1, limit);
+        end = find((byte) '\t', (byte) 0);
+        int deletions = parseCount(end);
+        position = Math.min(end + 1, limit);
+
+        if (ensureAvailable() && buffer[position] == 0) {
+            // Renames are given as \0<old path>\0<new path>\0, the changes count towards the new path
+            position++;
+            end = find((byte) 0, (byte) 0);
+            position = Math.min(end + 1, limit);
+        }
+        end = find((byte) 0, (byte) 0);
+        String path = paths.get(buffer, position, end);
+        position = Math.min(end + 1, limit);
+        listener.onChange(path, additions, deletions);
+    }
+
+    /**
+     * Parses the number from the current position to the given end. Binary files have a count of "-", which is 0.
+     */
+    private int parseCount(int end) {
+        int value = 0;
+        for (int i = position; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) return 0;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private boolean startsWithCommit() throws IOException {
+        // A change always starts with a digit or "-", so a "c" can only be the start of a commit
+        return ensureAvailable() && buffer[position] == COMMIT_START;
+    }
+
+    /**
+     * Finds the next of two bytes, reading more input if needed. Positions are only valid until the next call.
+     */
+    private int find(byte first, byte second) throws IOException {
+        int i = position;
+        while (true) {
+            for (; i < limit; i++) {
+                byte b = buffer[i];
+                if (b == first || b == second) return i;
+            }
+            int offset = i - position;
+            if (fill() == END_OF_STREAM) return limit;
+            i = position + offset;
+        }
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        return position < limit || fill() != END_OF_STREAM;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer and reads more input after them.
+     */
+    private int fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read <= 0) return END_OF_STREAM;
+        limit += read;
+        return read;
+    }
+
+    /**
+     * Receives the parsed log.
+     */
+    interface Listener {
+        /**
+         * @param commit the ID of the commit, only valid until this method returns. Use {@code toString()} to keep it.
+         */
+        void onCommit(CharSequence commit, boolean merge, String author);
+
+        void onChange(String file, int additions, int deletions);
+    }
+
+    /**
+     * The ID of the current commit as ASCII bytes, reused for every commit.
+     */
+    private static final class CommitId implements CharSequence {
+        private byte[] bytes = new byte[64];
+        private int length = 0;
+
+        void set(byte[] source, int start, int end) {
+            length = end - start;
+            if (length > bytes.length) bytes = new byte[length];
+            System.arraycopy(source, start, bytes, 0, length);
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Maps byte sequences to Strings without creating a String for sequences that were already seen.
+     */
+    private static final class StringTable {
+        private static final double MAX_LOAD = 0.5;
+
+        private byte[][] keys = new byte[256][];
+        private String[] values = new String[256];
+        private int[] hashes = new int[256];
+        private int size = 0;
+
+        String get(byte[] bytes, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            int mask = keys.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (key == null) return insert(slot, hash, bytes, start, end);
+                if (hashes[slot] == hash && Arrays.equals(key, 0, key.length, bytes, start, end)) return values[slot];
+            }
+        }
+
+        private String insert(int slot, int hash, byte[] bytes, int start, int end) {
+            String value = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            keys[slot] = Arrays.copyOfRange(bytes, start, end);
+            values[slot] = value;
+            hashes[slot] = hash;
+            if (++size > keys.length * MAX_LOAD) grow();
+            return value;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            int[] oldHashes = hashes;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            hashes = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int slot = mix(oldHashes[i]) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package net.justonedev;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads loose and packed objects straight from the object database of a repository, without running git. Only SHA-1
+ * repositories are supported. Not thread-safe.
+ */
+final class ObjectStore implements AutoCloseable {
+
+    static final int TYPE_COMMIT = 1;
+    static final int TYPE_TREE = 2;
+    static final int TYPE_BLOB = 3;
+    static final int TYPE_TAG = 4;
+    private static final int TYPE_OFS_DELTA = 6;
+    private static final int TYPE_REF_DELTA = 7;
+
+    static final int ID_LENGTH = 20;
+    private static final int MAX_ALTERNATE_DEPTH = 5;
+    private static final int INPUT_BUFFER_SIZE = 16 * 1024;
+    // Delta bases are kept in memory, as many objects of a chain share the same bases
+    private static final long MAX_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final Arena arena = Arena.ofShared();
+    private final List<File> objectDirectories = new ArrayList<>();
+    private final List<Pack> packs = new ArrayList<>();
+    private final Inflater inflater = new Inflater();
+    // The inflater cannot read from memory of a shared arena, so the compressed data is copied in chunks
+    private final byte[] input = new byte[INPUT_BUFFER_SIZE];
+    private final Map<Long, GitObject> baseCache = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes = 0;
+
+    /**
+     * An object of the repository, with one of the TYPE_ constants as its type.
+     */
+    record GitObject(int type, byte[] data) {}
+
+    private ObjectStore() {}
+
+    /**
+     * Opens the object database of the given .git directory.
+     */
+    static ObjectStore open(File gitDirectory) throws IOException {
+        // Linked worktrees share the objects of the main repository
+        File commonDirectory = gitDirectory;
+        File commonDirFile = new File(gitDirectory, "commondir");
+        if (commonDirFile.isFile()) {
+            File path = new File(Files.readString(commonDirFile.toPath()).trim());
+            commonDirectory = path.isAbsolute() ? path : new File(gitDirectory, path.getPath());
+        }
+        File config = new File(commonDirectory, "config");
+        if (config.isFile() && Files.readString(config.toPath()).toLowerCase().matches("(?s).*objectformat\\s*=\\s*sha256.*")) {
+            throw new IOException("Repositories with SHA-256 object names are not supported");
+        }
+
+        ObjectStore store = new ObjectStore();
+        try {
+            store.addObjectDirectory(new File(commonDirectory, "objects"), 0);
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private void addObjectDirectory(File directory, int depth) throws IOException {
+        if (!directory.isDirectory()) throw new IOException("Object directory %s does not exist".formatted(directory));
+        objectDirectories.add(directory);
+        File[] indexFiles = new File(directory, "pack").listFiles((dir, name) -> name.endsWith(".idx"));
+        if (indexFiles != null) {
+            for (File indexFile : indexFiles) {
+                File packFile = new File(indexFile.getPath().replaceAll("\\.idx$", ".pack"));
+                if (packFile.isFile()) packs.add(new Pack(map(indexFile), map(packFile), packs.size()));
+            }
+        }
+        File alternates = new File(directory, "info/alternates");
+        if (!alternates.isFile() || depth >= MAX_ALTERNATE_DEPTH) return;
+        for (String line : Files.readAllLines(alternates.toPath())) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            File alternate = new File(line);
+            addObjectDirectory(alternate.isAbsolute() ? alternate : new File(directory, line), depth + 1);
+        }
+    }
+
+    private MemorySegment map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        }
+    }
+
+    /**
+     * @param id the name of the object, as 40 hexadecimal characters.
+     * @return the object, or null if it does not exist.
+     */
+    GitObject read(String id) throws IOException {
+        return read(HexFormat.of().parseHex(id));
+    }
+
+    /**
+     * @param id the name of the object, as {@link #ID_LENGTH} bytes.
+     * @return the object, or null if it does not exist.
+     */
+    GitObject read(byte[] id) throws IOException {
+        for (Pack pack : packs) {
+            long offset = pack.find(id);
+            if (offset >= 0) return pack.read(offset);
+        }
+        String hex = HexFormat.of().formatHex(id);
+        for (File directory : objectDirectories) {
+            File file = new File(directory, hex.substring(0, 2) + "/" + hex.substring(2));
+            if (file.isFile()) return readLoose(file);
+        }
+        return null;
+    }
+
+    /**
+     * Reads an object and fails if it does not exist or has another type.
+     */
+    byte[] read(String id, int type) throws IOException {
+        GitObject object = read(id);
+        if (object == null) throw new IOException("Object %s is missing".formatted(id));
+        if (object.type != type) throw new IOException("Object %s has type %d, expected %d".formatted(id, object.type, type));
+        return object.data;
+    }
+
+    private static GitObject readLoose(File file) throws IOException {
+        try (InputStream in = new InflaterInputStream(new FileInputStream(file))) {
+            // "<type> <size>\0<content>"
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) > 0) header.write(b);
+            if (b < 0) throw new IOException("Loose object %s is truncated".formatted(file));
+            String[] parts = header.toString(StandardCharsets.US_ASCII).split(" ");
+            byte[] data = in.readNBytes(Integer.parseInt(parts[1]));
+            int type = switch (parts[0]) {
+                case "commit" -> TYPE_COMMIT;
+                case "tree" -> TYPE_TREE;
+                case "blob" -> TYPE_BLOB;
+                case "tag" -> TYPE_TAG;
+                default -> throw new IOException("Loose object %s has the unknown type %s".formatted(file, parts[0]));
+            };
+            return new GitObject(type, data);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Loose object %s has an invalid header".formatted(file));
+        }
+    }
+
+    private void cache(long key, GitObject object) {
+        if (object.data.length > MAX_CACHE_BYTES / 4) return;
+        if (baseCache.put(key, object) == null) cachedBytes += object.data.length;
+        var iterator = baseCache.values().iterator();
+        while (cachedBytes > MAX_CACHE_BYTES && iterator.hasNext()) {
+            cachedBytes -= iterator.next().data.length;
+            iterator.remove();
+        }
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+        arena.close();
+    }
+
+    /**
+     * A pack file and its index.
+     */
+    private final class Pack {
+        private static final int INDEX_SIGNATURE = 0xff744f63;
+        private static final int FANOUT_OFFSET = 8;
+        private static final int TRAILER_LENGTH = ID_LENGTH;
+
+        private final MemorySegment index;
+        private final MemorySegment pack;
+        private final int number;
+        private final int objects;
+        private final long namesOffset, offsetsOffset, largeOffsetsOffset;
+
+        private Pack(MemorySegment index, MemorySegment pack, int number) throws IOException {
+            this.index = index;
+            this.pack = pack;
+            this.number = number;
+            if (index.byteSize() < FANOUT_OFFSET + 256 * 4 || index.get(INT, 0) != INDEX_SIGNATURE || index.get(INT, 4) != 2) {
+                throw new IOException("Only version 2 pack indexes are supported");
+            }
+            objects = index.get(INT, FANOUT_OFFSET + 255 * 4);
+            namesOffset = FANOUT_OFFSET + 256 * 4;
+            // The names are followed by a CRC32 per object, then by the offsets
+            offsetsOffset = namesOffset + (long) objects * (ID_LENGTH + 4);
+            largeOffsetsOffset = offsetsOffset + (long) objects * 4;
+        }
+
+        /**
+         * @return the offset of the object in the pack, or -1 if it is not part of this pack.
+         */
+        long find(byte[] id) {
+            int first = id[0] & 0xff;
+            int low = first == 0 ? 0 : index.get(INT, FANOUT_OFFSET + (first - 1) * 4L);
+            int high = index.get(INT, FANOUT_OFFSET + first * 4L) - 1;
+            MemorySegment key = MemorySegment.ofArray(id);
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long position = namesOffset + (long) middle * ID_LENGTH;
+                long mismatch = MemorySegment.mismatch(index, position, position + ID_LENGTH, key, 0, ID_LENGTH);
+                if (mismatch < 0) return getOffset(middle);
+                int comparison = Integer.compare(index.get(ValueLayout.JAVA_BYTE, position + mismatch) & 0xff, id[(int) mismatch] & 0xff);
+                if (comparison < 0) low = middle + 1;
+                else high = middle - 1;
+            }
+            return -1;
+        }
+
+        private long getOffset(int object) {
+            int offset = index.get(INT, offsetsOffset + object * 4L);
+            // Offsets beyond 2 GiB are stored in a separate table of 64-bit offsets
+            if (offset >= 0) return offset;
+            return index.get(LONG, largeOffsetsOffset + (offset & 0x7fffffffL) * 8);
+        }
+
+        GitObject read(long offset) throws IOException {
+            long position = offset;
+            int b = pack.get(ValueLayout.JAVA_BYTE, position++) & 0xff;
+            int type = (b >> 4) & 7;
+            long size = b & 15;
+            for (int shift = 4; (b & 0x80) != 0; shift += 7) {
+                b = pack.get(ValueLayout.JAVA_BYTE, position++) & 0xff;
+                size |= (long) (b & 0x7f) << shift;
+            }
+            if (size > Integer.MAX_VALUE - 8) throw new IOException("Object at %d is too large".formatted(offset));
+
+            GitObject base;
+            switch (type) {
+                case TYPE_OFS_DELTA -> {
+                    b = pack.get(ValueLayout.JAVA_BYTE, position++) & 0xff;
+                    long distance = b & 0x7f;
+                    while ((b & 0x80) != 0) {
+                        b = pack.get(ValueLayout.JAVA_BYTE, position++) & 0xff;
+                        distance = ((distance + 1) << 7) | (b & 0x7f);
+                    }
+                    base = readBase(offset - distance);
+                }
+                case TYPE_REF_DELTA -> {
+                    byte[] baseId = pack.asSlice(position, ID_LENGTH).toArray(ValueLayout.JAVA_BYTE);
+                    position += ID_LENGTH;
+                    base = ObjectStore.this.read(baseId);
+                    if (base == null) throw new IOException("Delta base %s is missing".formatted(HexFormat.of().formatHex(baseId)));
+                }
+                case TYPE_COMMIT, TYPE_TREE, TYPE_BLOB, TYPE_TAG -> {
+                    return new GitObject(type, inflate(position, (int) size));
+                }
+                default -> throw new IOException("Object at %d has the unknown type %d".formatted(offset, type));
+            }
+            return new GitObject(base.type, Delta.apply(base.data, inflate(position, (int) size)));
+        }
+
+        private GitObject readBase(long offset) throws IOException {
+            long key = ((long) number << 48) | offset;
+            GitObject base = baseCache.get(key);
+            if (base == null) {
+                base = read(offset);
+                cache(key, base);
+            }
+            return base;
+        }
+
+        private byte[] inflate(long position, int size) throws IOException {
+            byte[] data = new byte[size];
+            long end = pack.byteSize() - TRAILER_LENGTH;
+            long next = position;
+            inflater.reset();
+            try {
+                int length = 0;
+                while (length < size) {
+                    if (inflater.needsInput()) {
+                        int chunk = (int) Math.min(input.length, end - next);
+                        if (chunk <= 0) break;
+                        MemorySegment.copy(pack, ValueLayout.JAVA_BYTE, next, input, 0, chunk);
+                        inflater.setInput(input, 0, chunk);
+                        next += chunk;
+                    }
+                    int inflated = inflater.inflate(data, length, size - length);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsDictionary())) break;
+                    length += inflated;
+                }
+                if (length < size) throw new IOException("Object at %d is truncated".formatted(position));
+            } catch (DataFormatException e) {
+                throw new IOException("Object at %d is corrupt: %s".formatted(position, e.getMessage()));
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Applies the deltas of pack files, which describe an object as copies from a base object and inserted bytes.
+     */
+    private static final class Delta {
+
+        static byte[] apply(byte[] base, byte[] delta) throws IOException {
+            int[] position = { 0 };
+            long baseSize = readSize(delta, position);
+            long resultSize = readSize(delta, position);
+            if (baseSize != base.length || resultSize > Integer.MAX_VALUE) throw new IOException("Delta does not match its base");
+            byte[] result = new byte[(int) resultSize];
+            int written = 0;
+            int i = position[0];
+            while (i < delta.length) {
+                int instruction = delta[i++] & 0xff;
+                if ((instruction & 0x80) != 0) {
+                    // Copy from the base, the set bits say which bytes of the offset and size follow
+                    long offset = 0;
+                    int length = 0;
+                    for (int bit = 0; bit < 4; bit++) {
+                        if ((instruction & (1 << bit)) != 0) offset |= (long) (delta[i++] & 0xff) << (bit * 8);
+                    }
+                    for (int bit = 0; bit < 3; bit++) {
+                        if ((instruction & (0x10 << bit)) != 0) length |= (delta[i++] & 0xff) << (bit * 8);
+                    }
+                    if (length == 0) length = 0x10000;
+                    if (offset + length > base.length || written + length > result.length) throw new IOException("Delta copies out of bounds");
+                    System.arraycopy(base, (int) offset, result, written, length);
+                    written += length;
+                } else if (instruction != 0) {
+                    // Insert the following bytes
+                    if (i + instruction > delta.length || written + instruction > result.length) throw new IOException("Delta inserts out of bounds");
+                    System.arraycopy(delta, i, result, written, instruction);
+                    i += instruction;
+                    written += instruction;
+                } else {
+                    throw new IOException("Delta contains the reserved instruction 0");
+                }
+            }
+            if (written != result.length) throw new IOException("Delta is incomplete");
+            return result;
+        }
+
+        private static long readSize(byte[] delta, int[] position) {
+            long size = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = delta[position[0]++] & 0xff;
+                size |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return size;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package net.justonedev;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Reads the history from an {@link ObjectStore} and reports it like {@code git log --numstat} would, including renames.
+ * Large rewrites may count a few lines less than git.
+ */
+final class ObjectStoreLog {
+
+    private static final int TREE_MODE = 0040000;
+    private static final int GITLINK_MODE = 0160000;
+    // git stops walking once only uninteresting commits are left, plus a few more to allow for clock skew
+    private static final int SLOP = 5;
+
+    private final ObjectStore store;
+    private final PathFilter filter;
+    private final Set<String> shallowCommits;
+    private final Map<String, Commit> commits = new HashMap<>();
+
+    ObjectStoreLog(ObjectStore store, File gitDirectory, PathFilter filter) throws IOException {
+        this.store = store;
+        this.filter = filter;
+        File shallow = new File(gitDirectory, "shallow");
+        this.shallowCommits = shallow.isFile() ? new HashSet<>(Files.readAllLines(shallow.toPath())) : Set.of();
+    }
+
+    /**
+     * Reports all commits that are reachable from one of the tips, but not from any excluded tip, like
+     * {@code git log <tips> --not <excluded>}.
+     */
+    void log(Collection<String> tips, Collection<String> excluded, NumstatParser.Listener listener) throws IOException {
+        for (Commit commit : walk(tips, excluded)) {
+            checkInterrupted();
+            report(commit, listener);
+        }
+    }
+
+    /**
+     * Reports exactly the given commits, like {@code git log --no-walk}.
+     */
+    void show(Collection<String> commitIds, NumstatParser.Listener listener) throws IOException {
+        for (String id : commitIds) {
+            checkInterrupted();
+            report(getCommit(id), listener);
+        }
+    }
+
+    /**
+     * @return the names of all commits that are reachable from one of the tips, but not from any excluded tip.
+     */
+    CommitIdSet revList(Collection<String> tips, Collection<String> excluded) throws IOException {
+        CommitIdSet ids = new CommitIdSet();
+        for (Commit commit : walk(tips, excluded)) ids.add(commit.id);
+        return ids;
+    }
+
+    private List<Commit> walk(Collection<String> tips, Collection<String> excluded) throws IOException {
+        for (Commit commit : commits.values()) {
+            commit.uninteresting = false;
+            commit.state = Commit.NEW;
+        }
+        Walk walk = new Walk();
+        for (String tip : excluded) {
+            Commit commit = peel(tip);
+            if (commit == null) continue;
+            commit.uninteresting = true;
+            walk.add(commit);
+        }
+        for (String tip : tips) {
+            Commit commit = peel(tip);
+            if (commit != null) walk.add(commit);
+        }
+
+        List<Commit> found = new ArrayList<>();
+        int slop = SLOP;
+        while (!walk.queue.isEmpty()) {
+            checkInterrupted();
+            if (walk.interesting > 0) slop = SLOP;
+            else if (--slop == 0) break;
+            Commit commit = walk.poll();
+            if (commit.uninteresting) {
+                markParentsUninteresting(commit, walk);
+                continue;
+            }
+            found.add(commit);
+            for (String parentId : commit.parents) walk.add(getCommit(parentId));
+        }
+        // Commits can turn out to be uninteresting after they were found
+        return found.stream().filter((commit) -> !commit.uninteresting).toList();
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        // The thread of a repository is interrupted when the repository is cancelled, see RepositoryRunner
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Cancelled");
+    }
+
+    private void markParentsUninteresting(Commit start, Walk walk) throws IOException {
+        List<Commit> pending = new ArrayList<>(List.of(start));
+        while (!pending.isEmpty()) {
+            Commit commit = pending.removeLast();
+            for (String parentId : commit.parents) {
+                Commit parent = getCommit(parentId);
+                if (parent.uninteresting) continue;
+                if (parent.state == Commit.QUEUED) walk.interesting--;
+                parent.uninteresting = true;
+                // Commits that were already walked do not come up again, so their parents are marked right away
+                if (parent.state == Commit.WALKED) pending.add(parent);
+                else walk.add(parent);
+            }
+        }
+    }
+
+    /**
+     * The commits that still have to be walked, newest first, like git does by default.
+     */
+    private static final class Walk {
+        private final PriorityQueue<Commit> queue = new PriorityQueue<>(Comparator.comparingLong((Commit commit) -> commit.time).reversed());
+        // The number of queued commits that are not uninteresting
+        private int interesting = 0;
+
+        void add(Commit commit) {
+            if (commit.state != Commit.NEW) return;
+            commit.state = Commit.QUEUED;
+            queue.add(commit);
+            if (!commit.uninteresting) interesting++;
+        }
+
+        Commit poll() {
+            Commit commit = queue.poll();
+            commit.state = Commit.WALKED;
+            if (!commit.uninteresting) interesting--;
+            return commit;
+        }
+    }
+
+    /**
+     * @return the commit the name points to, following annotated tags, or null if it does not point to a commit.
+     */
+    private Commit peel(String id) throws IOException {
+        for (int depth = 0; depth < 10; depth++) {
+            ObjectStore.GitObject object = store.read(id);
+            if (object == null) throw new IOException("Object %s is missing".formatted(id));
+            if (object.type() == ObjectStore.TYPE_COMMIT) return getCommit(id);
+            if (object.type() != ObjectStore.TYPE_TAG) return null;
+            id = readHeader(object.data(), "object ");
+        }
+        return null;
+    }
+
+    private Commit getCommit(String id) throws IOException {
+        Commit commit = commits.get(id);
+        if (commit == null) {
+            commit = Commit.parse(id, store.read(id, ObjectStore.TYPE_COMMIT), shallowCommits.contains(id));
+            commits.put(id, commit);
+        }
+        return commit;
+    }
+
+    private void report(Commit commit, NumstatParser.Listener listener) throws IOException {
+        boolean merge = commit.parents.length > 1;
+        listener.onCommit(commit.id, merge, commit.author);
+        // Like git log without -m, merges are shown without changes
+        if (merge) return;
+        String parentTree = commit.parents.length == 0 ? null : getCommit(commit.parents[0]).tree;
+
+        TreeChanges changes = new TreeChanges();
+        diffTrees(parentTree, commit.tree, "", changes);
+        for (Rename rename : changes.detectRenames()) {
+            reportChange(rename.path, rename.oldId, rename.newId, listener);
+        }
+        for (Entry entry : changes.deleted) reportChange(entry.path, entry.id, null, entry.mode, listener);
+        for (Entry entry : changes.added) reportChange(entry.path, null, entry.id, entry.mode, listener);
+        for (Entry[] pair : changes.modified) reportChange(pair[1].path, pair[0].id, pair[1].id, pair[1].mode, listener);
+    }
+
+    private void reportChange(String path, String oldId, String newId, NumstatParser.Listener listener) throws IOException {
+        reportChange(path, oldId, newId, 0, listener);
+    }
+
+    private void reportChange(String path, String oldId, String newId, int mode, NumstatParser.Listener listener) throws IOException {
+        if (mode == GITLINK_MODE) {
+            // Submodules are shown as a changed "Subproject commit" line
+            listener.onChange(path, newId == null ? 0 : 1, oldId == null ? 0 : 1);
+            return;
+        }
+        byte[] oldData = oldId == null ? new byte[0] : store.read(oldId, ObjectStore.TYPE_BLOB);
+        byte[] newData = newId == null ? new byte[0] : store.read(newId, ObjectStore.TYPE_BLOB);
+        if (LineDiff.isBinary(oldData) || LineDiff.isBinary(newData)) {
+            listener.onChange(path, 0, 0);
+            return;
+        }
+        if (oldId == null) listener.onChange(path, LineDiff.countLines(newData), 0);
+        else if (newId == null) listener.onChange(path, 0, LineDiff.countLines(oldData));
+        else if (oldId.equals(newId)) listener.onChange(path, 0, 0);
+        else {
+            int[] counts = LineDiff.count(oldData, newData);
+            listener.onChange(path, counts[0], counts[1]);
+        }
+    }
+
+    /**
+     * Compares two trees, both sorted in the order git stores them in.
+     */
+    private void diffTrees(String oldTree, String newTree, String prefix, TreeChanges changes) throws IOException {
+        List<Entry> oldEntries = oldTree == null ? List.of() : readTree(oldTree, prefix);
+        List<Entry> newEntries = newTree == null ? List.of() : readTree(newTree, prefix);
+        int i = 0, j = 0;
+        while (i < oldEntries.size() || j < newEntries.size()) {
+            int comparison = i >= oldEntries.size() ? 1 : j >= newEntries.size() ? -1 : compare(oldEntries.get(i), newEntries.get(j));
+            if (comparison < 0) {
+                removed(oldEntries.get(i++), changes);
+            } else if (comparison > 0) {
+                added(newEntries.get(j++), changes);
+            } else {
+                Entry oldEntry = oldEntries.get(i++), newEntry = newEntries.get(j++);
+                if (oldEntry.id.equals(newEntry.id) && oldEntry.mode == newEntry.mode) continue;
+                if (oldEntry.isTree()) diffTrees(oldEntry.id, newEntry.id, newEntry.path + "/", changes);
+                else if (!filter.isExcluded(newEntry.path)) changes.modified.add(new Entry[] { oldEntry, newEntry });
+            }
+        }
+    }
+
+    private void removed(Entry entry, TreeChanges changes) throws IOException {
+        if (entry.isTree()) diffTrees(entry.id, null, entry.path + "/", changes);
+        else if (!filter.isExcluded(entry.path)) changes.deleted.add(entry);
+    }
+
+    private void added(Entry entry, TreeChanges changes) throws IOException {
+        if (entry.isTree()) diffTrees(null, entry.id, entry.path + "/", changes);
+        else if (!filter.isExcluded(entry.path)) changes.added.add(entry);
+    }
+
+    /**
+     * Git sorts tree entries by their name, with a "/" appended to the names of trees.
+     */
+    private static int compare(Entry a, Entry b) {
+        byte[] first = a.sortKey, second = b.sortKey;
+        return Arrays.compareUnsigned(first, second);
+    }
+
+    private List<Entry> readTree(String id, String prefix) throws IOException {
+        byte[] data = store.read(id, ObjectStore.TYPE_TREE);
+        List<Entry> entries = new ArrayList<>();
+        int position = 0;
+        // Every entry is "<octal mode> <name>\0<binary id>"
+        while (position < data.length) {
+            int mode = 0;
+            while (data[position] != ' ') mode = (mode << 3) + (data[position++] - '0');
+            int nameStart = ++position;
+            while (data[position] != 0) position++;
+            String name = new String(data, nameStart, position - nameStart, StandardCharsets.UTF_8);
+            boolean tree = (mode & 0170000) == TREE_MODE;
+            byte[] sortKey = Arrays.copyOfRange(data, nameStart, position + (tree ? 1 : 0));
+            if (tree) sortKey[sortKey.length - 1] = '/';
+            position++;
+            String objectId = HexFormat.of().formatHex(data, position, position + ObjectStore.ID_LENGTH);
+            position += ObjectStore.ID_LENGTH;
+            entries.add(new Entry(prefix + name, mode, objectId, sortKey));
+        }
+        return entries;
+    }
+
+    private static String readHeader(byte[] data, String name) {
+        String text = new String(data, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            if (line.isEmpty()) break;
+            if (line.startsWith(name)) return line.substring(name.length());
+        }
+        return "";
+    }
+
+    private record Entry(String path, int mode, String id, byte[] sortKey) {
+        boolean isTree() {
+            return (mode & 0170000) == TREE_MODE;
+        }
+
+        String name() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+    }
+
+    private record Rename(String path, String oldId, String newId) {}
+
+    /**
+     * The files that changed between two trees.
+     */
+    private final class TreeChanges {
+        // Rename detection is skipped above this number of added times deleted files, like git's diff.renameLimit
+        private static final int RENAME_LIMIT = 1000;
+        // Inexact rename detection is skipped once the candidates have more bytes in total than this
+        private static final long RENAME_BYTES_LIMIT = 64L * 1024 * 1024;
+        private static final int MAX_SCORE = 60000;
+        private static final int MINIMUM_SCORE = MAX_SCORE / 2;
+
+        private final List<Entry> deleted = new ArrayList<>();
+        private final List<Entry> added = new ArrayList<>();
+        private final List<Entry[]> modified = new ArrayList<>();
+
+        /**
+         * Pairs deleted and added files that are renames. They are removed from the deleted and added files.
+         */
+        List<Rename> detectRenames() throws IOException {
+            List<Rename> renames = new ArrayList<>();
+            if (deleted.isEmpty() || added.isEmpty()) return renames;
+
+            // Exact renames first, preferring a source with the same file name
+            Map<String, List<Entry>> deletedById = new HashMap<>();
+            for (Entry entry : deleted) {
+                if (entry.mode != GITLINK_MODE) deletedById.computeIfAbsent(entry.id, (key) -> new ArrayList<>()).add(entry);
+            }
+            Set<Entry> usedSources = new HashSet<>();
+            Set<Entry> renamedTargets = new HashSet<>();
+            for (Entry target : added) {
+                List<Entry> sources = deletedById.getOrDefault(target.id, List.of());
+                Entry best = null;
+                for (Entry source : sources) {
+                    if (usedSources.contains(source)) continue;
+                    if (best == null || (!best.name().equals(target.name()) && source.name().equals(target.name()))) best = source;
+                }
+                if (best == null || isEmpty(target.id)) continue;
+                usedSources.add(best);
+                renamedTargets.add(target);
+                renames.add(new Rename(target.path, best.id, target.id));
+            }
+
+            List<Entry> sources = deleted.stream().filter((entry) -> !usedSources.contains(entry) && entry.mode != GITLINK_MODE).toList();
+            List<Entry> targets = added.stream().filter((entry) -> !renamedTargets.contains(entry) && entry.mode != GITLINK_MODE).toList();
+            if (!sources.isEmpty() && !targets.isEmpty() && (long) sources.size() * targets.size() <= (long) RENAME_LIMIT * RENAME_LIMIT) {
+                detectInexactRenames(sources, targets, usedSources, renamedTargets, renames);
+            }
+            deleted.removeIf(usedSources::contains);
+            added.removeIf(renamedTargets::contains);
+            return renames;
+        }
+
+        private void detectInexactRenames(List<Entry> sources, List<Entry> targets, Set<Entry> usedSources, Set<Entry> renamedTargets, List<Rename> renames) throws IOException {
+            Map<Entry, byte[]> contents = new HashMap<>();
+            Map<Entry, Map<Integer, Integer>> spans = new HashMap<>();
+            long bytes = 0;
+            for (Entry entry : Stream.concat(sources.stream(), targets.stream()).toList()) {
+                byte[] data = store.read(entry.id, ObjectStore.TYPE_BLOB);
+                bytes += data.length;
+                if (bytes > RENAME_BYTES_LIMIT) return;
+                contents.put(entry, data);
+            }
+
+            record Candidate(Entry source, Entry target, int score, boolean sameName) {}
+            List<Candidate> candidates = new ArrayList<>();
+            for (Entry target : targets) {
+                byte[] targetData = contents.get(target);
+                for (Entry source : sources) {
+                    byte[] sourceData = contents.get(source);
+                    int maxSize = Math.max(sourceData.length, targetData.length);
+                    int minSize = Math.min(sourceData.length, targetData.length);
+                    // Too different in size to reach the minimum score
+                    if (minSize == 0 || (long) maxSize * (MAX_SCORE - MINIMUM_SCORE) < (long) (maxSize - minSize) * MAX_SCORE) continue;
+                    var sourceSpans = spans.computeIfAbsent(source, (entry) -> hashSpans(contents.get(entry)));
+                    var targetSpans = spans.computeIfAbsent(target, (entry) -> hashSpans(contents.get(entry)));
+                    long copied = 0;
+                    for (var span : sourceSpans.entrySet()) {
+                        Integer targetCount = targetSpans.get(span.getKey());
+                        if (targetCount != null) copied += Math.min(span.getValue(), targetCount);
+                    }
+                    int score = (int) (copied * MAX_SCORE / maxSize);
+                    if (score >= MINIMUM_SCORE) candidates.add(new Candidate(source, target, score, source.name().equals(target.name())));
+                }
+            }
+            candidates.sort(Comparator.comparingInt(Candidate::score).thenComparing(Candidate::sameName).reversed());
+            for (Candidate candidate : candidates) {
+                if (usedSources.contains(candidate.source) || renamedTargets.contains(candidate.target)) continue;
+                usedSources.add(candidate.source);
+                renamedTargets.add(candidate.target);
+                renames.add(new Rename(candidate.target.path, candidate.source.id, candidate.target.id));
+            }
+        }
+
+        private boolean isEmpty(String blobId) throws IOException {
+            return store.read(blobId, ObjectStore.TYPE_BLOB).length == 0;
+        }
+    }
+
+    /**
+     * Splits the content into spans that end at a line break or after 64 bytes and counts the bytes per span hash,
+     * like git's similarity estimation does.
+     */
+    private static Map<Integer, Integer> hashSpans(byte[] data) {
+        final int hashBase = 107927;
+        boolean text = !LineDiff.isBinary(data);
+        Map<Integer, Integer> counts = new HashMap<>();
+        int accumulator1 = 0, accumulator2 = 0, length = 0;
+        for (int i = 0; i < data.length; i++) {
+            int c = data[i] & 0xff;
+            // Line endings do not matter for text files
+            if (text && c == '\r' && i + 1 < data.length && data[i + 1] == '\n') continue;
+            int old1 = accumulator1;
+            accumulator1 = (accumulator1 << 7) ^ (accumulator2 >>> 25);
+            accumulator2 = (accumulator2 << 7) ^ (old1 >>> 25);
+            accumulator1 += c;
+            if (++length < 64 && c != '\n') continue;
+            counts.merge(Integer.remainderUnsigned(accumulator1 + accumulator2 * 0x61, hashBase), length, Integer::sum);
+            accumulator1 = accumulator2 = length = 0;
+        }
+        if (length > 0) counts.merge(Integer.remainderUnsigned(accumulator1 + accumulator2 * 0x61, hashBase), length, Integer::sum);
+        return counts;
+    }
+
+    /**
+     * The parts of a commit the log needs.
+     */
+    private static final class Commit {
+        private static final int NEW = 0, QUEUED = 1, WALKED = 2;
+
+        private final String id;
+        private final String tree;
+        private final String[] parents;
+        private final String author;
+        private final long time;
+        private boolean uninteresting = false;
+        private int state = NEW;
+
+        private Commit(String id, String tree, String[] parents, String author, long time) {
+            this.id = id;
+            this.tree = tree;
+            this.parents = parents;
+            this.author = author;
+            this.time = time;
+        }
+
+        static Commit parse(String id, byte[] data, boolean shallow) {
+            String tree = "", author = "";
+            List<String> parents = new ArrayList<>();
+            long time = 0;
+            int position = 0;
+            while (position < data.length && data[position] != '\n') {
+                int end = position;
+                while (end < data.length && data[end] != '\n') end++;
+                String line = new String(data, position, end - position, StandardCharsets.UTF_8);
+                if (line.startsWith("tree ")) tree = line.substring(5);
+                else if (line.startsWith("parent ")) parents.add(line.substring(7));
+                else if (line.startsWith("author ")) author = line.substring(7, Math.max(7, line.indexOf('>') + 1)).trim();
+                else if (line.startsWith("committer ")) time = parseTime(line);
+                position = end + 1;
+            }
+            // The parents of shallow commits are not part of the repository
+            return new Commit(id, tree, shallow ? new String[0] : parents.toArray(String[]::new), author, time);
+        }
+
+        private static long parseTime(String line) {
+            String[] parts = line.substring(line.lastIndexOf('>') + 1).trim().split(" ");
+            try {
+                return Long.parseLong(parts[0]);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package net.justonedev;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which files are excluded from the stats, with rules in the .gitignore syntax. A rule that matches a folder
+ * excludes everything inside it, and the last matching rule wins. Suffix and name rules are looked up in a trie and a map,
+ * only the rest are matched as regular expressions.
+ */
+public final class PathFilter {
+
+    private static final String GITATTRIBUTES = ".gitattributes";
+    private static final List<String> EXCLUDING_ATTRIBUTES = List.of("linguist-generated", "linguist-vendored");
+    // Characters the shell still interprets inside double quotes. The rules come from the repository, so rules with
+    // them are left out of the pathspecs, the files they match are excluded by isExcluded instead
+    private static final Pattern UNSAFE_PATHSPEC = Pattern.compile("[\"$`\\\\!%]");
+
+    private final List<Rule> rules;
+    private final SuffixNode suffixes = new SuffixNode();
+    private final Map<String, Integer> names = new HashMap<>();
+    private final List<Rule> globs = new ArrayList<>();
+    private final Map<String, Boolean> decisions = new ConcurrentHashMap<>();
+
+    private PathFilter(List<Rule> rules) {
+        this.rules = List.copyOf(rules);
+        for (Rule rule : this.rules) {
+            switch (rule.kind) {
+                case SUFFIX -> suffixes.add(rule.pattern.substring(1), rule.index);
+                case NAME -> names.put(rule.pattern, rule.index);
+                case GLOB -> globs.add(rule);
+            }
+        }
+    }
+
+    /**
+     * Creates a filter from the given rules, one rule per line. Empty lines and lines starting with "#" are ignored.
+     */
+    public static PathFilter of(List<String> lines) {
+        List<Rule> rules = new ArrayList<>();
+        addRules(rules, lines);
+        return new PathFilter(rules);
+    }
+
+    /**
+     * Loads {@link Config#EXCLUDED_FILES}, the generated and vendored files of the .gitattributes and the
+     * {@link Config#PATH_FILTER_FILE} of a repository, followed by the additional rules.
+     */
+    public static PathFilter load(String repoPath, List<String> additionalRules) {
+        List<Rule> rules = new ArrayList<>();
+        addRules(rules, Config.EXCLUDED_FILES);
+        if (Config.USE_GITATTRIBUTES_FILTER) addRules(rules, readGitattributes(new File(repoPath, GITATTRIBUTES)));
+        addRules(rules, readLines(new File(repoPath, Config.PATH_FILTER_FILE)));
+        addRules(rules, additionalRules);
+        return new PathFilter(rules);
+    }
+
+    public boolean isExcluded(String path) {
+        Boolean excluded = decisions.get(path);
+        if (excluded == null) {
+            excluded = decide(path);
+            decisions.put(path, excluded);
+        }
+        return excluded;
+    }
+
+    private boolean decide(String path) {
+        int match = -1;
+        // Rules without a slash match the file name and the name of every folder above it
+        for (int start = 0, end; start <= path.length(); start = end + 1) {
+            end = path.indexOf('/', start);
+            if (end < 0) end = path.length();
+            match = Math.max(match, suffixes.findLastMatch(path, start, end));
+            Integer nameMatch = names.get(path.substring(start, end));
+            if (nameMatch != null) match = Math.max(match, nameMatch);
+        }
+        for (int i = globs.size() - 1; i >= 0 && globs.get(i).index > match; i--) {
+            if (globs.get(i).regex.matcher(path).matches()) {
+                match = globs.get(i).index;
+                break;
+            }
+        }
+        return match >= 0 && !rules.get(match).negated;
+    }
+
+    /**
+     * @return the excluding rules as git pathspecs starting with "--", leaving out those before the last including rule.
+     */
+    public String toPathspecs() {
+        int lastNegated = -1;
+        for (Rule rule : rules) {
+            if (rule.negated) lastNegated = rule.index;
+        }
+        final int firstUsable = lastNegated + 1;
+        String pathspecs = rules.stream()
+                .filter((rule) -> rule.index >= firstUsable && !UNSAFE_PATHSPEC.matcher(rule.pattern).find())
+                .flatMap((rule) -> rule.toGitGlobs().stream())
+                .map((glob) -> "\":(exclude,glob)%s\"".formatted(glob))
+                .collect(Collectors.joining(" "));
+        return pathspecs.isEmpty() ? "" : "-- . " + pathspecs;
+    }
+
+    /**
+     * Describes the rules, to detect whether cached results were computed with the same filter.
+     */
+    @Override
+    public String toString() {
+        return rules.stream().map(Rule::toString).collect(Collectors.joining("\n"));
+    }
+
+    private static void addRules(List<Rule> rules, List<String> lines) {
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            rules.add(Rule.parse(line, rules.size()));
+        }
+    }
+
+    /**
+     * Reads the files that GitHub Linguist would skip as well from a .gitattributes file.
+     */
+    private static List<String> readGitattributes(File file) {
+        List<String> lines = new ArrayList<>();
+        for (String line : readLines(file)) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length < 2 || parts[0].startsWith("#")) continue;
+            for (int i = 1; i < parts.length; i++) {
+                String attribute = parts[i];
+                boolean unset = attribute.startsWith("-") || attribute.startsWith("!") || attribute.endsWith("=false");
+                String name = attribute.replaceFirst("^[-!]", "").replaceFirst("=.*$", "");
+                if (!EXCLUDING_ATTRIBUTES.contains(name)) continue;
+                lines.add((unset ? "!" : "") + parts[0]);
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> readLines(File file) {
+        if (!file.isFile()) return List.of();
+        try {
+            return Files.readAllLines(file.toPath());
+        } catch (IOException e) {
+            System.out.printf("Warning: Could not read %s: %s%n", file, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private enum Kind {
+        // "*.ext", matched with the suffix trie
+        SUFFIX,
+        // A file name without wildcards
+        NAME,
+        // Everything else, matched as a regular expression against the whole path
+        GLOB
+    }
+
+    private record Rule(int index, String pattern, boolean negated, boolean anchored, Kind kind, Pattern regex) {
+
+        private static final Pattern WILDCARDS = Pattern.compile("[*?\\[\\\\]");
+
+        static Rule parse(String line, int index) {
+            boolean negated = line.startsWith("!");
+            String pattern = negated ? line.substring(1) : line;
+            // A trailing slash matches everything inside the folder
+            boolean folder = pattern.endsWith("/");
+            if (folder) pattern = pattern.substring(0, pattern.length() - 1);
+            // Patterns with a slash are relative to the root, all others match at any depth
+            boolean anchored = pattern.contains("/");
+            if (pattern.startsWith("/")) pattern = pattern.substring(1);
+            if (folder) pattern += "/**";
+
+            Kind kind = Kind.GLOB;
+            if (!anchored && !WILDCARDS.matcher(pattern).find()) kind = Kind.NAME;
+            else if (!anchored && pattern.startsWith("*") && !WILDCARDS.matcher(pattern.substring(1)).find()) kind = Kind.SUFFIX;
+            // A matching folder excludes everything inside it
+            Pattern regex = kind == Kind.GLOB ? Pattern.compile((anchored ? "" : "(?:.*/)?") + globToRegex(pattern) + "(?:/.*)?") : null;
+            return new Rule(index, pattern, negated, anchored, kind, regex);
+        }
+
+        /**
+         * @return the globs for the files the rule matches and for the contents of the folders it matches.
+         */
+        List<String> toGitGlobs() {
+            String glob = anchored ? pattern : "**/" + pattern;
+            return pattern.endsWith("/**") ? List.of(glob) : List.of(glob, glob + "/**");
+        }
+
+        private static String globToRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (glob.startsWith("**/", i)) {
+                    regex.append("(?:.*/)?");
+                    i += 2;
+                } else if (glob.startsWith("**", i)) {
+                    regex.append(".*");
+                    i++;
+                } else if (c == '*') {
+                    regex.append("[^/]*");
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else if (c == '[') {
+                    int end = glob.indexOf(']', i + 1);
+                    if (end < 0) {
+                        regex.append("\\[");
+                        continue;
+                    }
+                    String group = glob.substring(i + 1, end);
+                    regex.append('[').append(group.startsWith("!") ? "^" + group.substring(1) : group).append(']');
+                    i = end;
+                } else if (c == '\\' && i + 1 < glob.length()) {
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+
+        @Override
+        public String toString() {
+            return (negated ? "!" : "") + (anchored ? "/" : "") + pattern;
+        }
+    }
+
+    /**
+     * A trie over reversed file name suffixes. Each node knows the last rule that ends there.
+     */
+    private static final class SuffixNode {
+        private final Map<Character, SuffixNode> children = new HashMap<>();
+        private int rule = -1;
+
+        void add(String suffix, int index) {
+            SuffixNode node = this;
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                node = node.children.computeIfAbsent(suffix.charAt(i), (key) -> new SuffixNode());
+            }
+            node.rule = Math.max(node.rule, index);
+        }
+
+        /**
+         * @return the last rule that matches a suffix of the name between start and end, or -1.
+         */
+        int findLastMatch(String path, int start, int end) {
+            int match = rule;
+            SuffixNode node = this;
+            for (int i = end - 1; i >= start; i--) {
+                node = node.children.get(path.charAt(i));
+                if (node == null) break;
+                match = Math.max(match, node.rule);
+            }
+            return match;
+        }
+    }
+}
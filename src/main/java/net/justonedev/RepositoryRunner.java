@@ -0,0 +1,120 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.RepositoryStats;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyses several repositories in parallel, higher priorities and then the largest ones first, so that the slowest
+ * one does not delay the whole run. Repositories that time out or fail are reported and left out.
+ */
+final class RepositoryRunner {
+
+    private static final String COUNT_OBJECTS_COMMAND = "git count-objects -v";
+
+    private RepositoryRunner() {}
+
+    /**
+     * @return the stats of all repositories that neither timed out nor failed, in the given order.
+     */
+    static List<RepositoryStats> run(List<BatchManifest.Entry> entries, int parallel) {
+        Map<BatchManifest.Entry, Long> sizes = new ConcurrentHashMap<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            entries.forEach((entry) -> executor.submit(() -> sizes.put(entry, estimateSize(entry.path()))));
+        }
+        List<BatchManifest.Entry> order = new ArrayList<>(entries);
+        order.sort(Comparator.comparingInt(BatchManifest.Entry::priority).thenComparingLong(sizes::get).reversed());
+
+        Map<BatchManifest.Entry, Future<RepositoryStats>> futures = new ConcurrentHashMap<>();
+        ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor();
+        // The pool takes the repositories in the order they were submitted
+        try (var executor = Executors.newFixedThreadPool(Math.max(1, parallel), Thread.ofVirtual().factory())) {
+            order.forEach((entry) -> futures.put(entry, executor.submit(() -> analyse(entry, timeouts))));
+        } finally {
+            timeouts.shutdownNow();
+        }
+
+        List<RepositoryStats> results = new ArrayList<>();
+        List<String> timedOut = new ArrayList<>(), failed = new ArrayList<>();
+        for (BatchManifest.Entry entry : entries) {
+            Future<RepositoryStats> future = futures.get(entry);
+            String name = new File(entry.path()).getName();
+            if (future.state() == Future.State.SUCCESS && future.resultNow() != null) {
+                results.add(future.resultNow());
+            } else if (future.state() == Future.State.SUCCESS) {
+                timedOut.add(name);
+            } else {
+                // One broken repository should not cost the results of all others
+                System.out.printf("[%s] Failed: %s%n", name, future.state() == Future.State.FAILED ? future.exceptionNow() : future.state());
+                failed.add(name);
+            }
+        }
+        if (!timedOut.isEmpty() || !failed.isEmpty()) {
+            System.out.printf("Analysed %d of %d repositories. Timed out: %s. Failed: %s.%n", results.size(), entries.size(),
+                    timedOut.isEmpty() ? "none" : String.join(", ", timedOut), failed.isEmpty() ? "none" : String.join(", ", failed));
+        }
+        return results;
+    }
+
+    private static RepositoryStats analyse(BatchManifest.Entry entry, ScheduledExecutorService timeouts) {
+        StatsGetter statsGetter = new StatsGetter(entry.mainBranch());
+        if (!entry.rules().isEmpty()) statsGetter.setPathFilter(PathFilter.load(entry.path(), entry.rules()));
+        statsGetter.setRevision(entry.revision());
+        statsGetter.setFetchPolicy(entry.fetchPolicy());
+        // The timeout stops the git processes and interrupts the work inside the JVM, unless the repository is done
+        Thread worker = Thread.currentThread();
+        boolean[] running = { true };
+        var timeout = entry.timeoutMinutes() <= 0 ? null : timeouts.schedule(() -> {
+            synchronized (running) {
+                if (!running[0]) return;
+                GitCommands.cancel(entry.path());
+                worker.interrupt();
+            }
+        }, entry.timeoutMinutes(), TimeUnit.MINUTES);
+        try {
+            RepositoryStats stats = statsGetter.getAllGitStats(entry.path());
+            if (!GitCommands.isCancelled(entry.path())) return stats;
+        } catch (CancellationException e) {
+            // Thrown between the phases of a cancelled repository
+        } finally {
+            synchronized (running) {
+                running[0] = false;
+            }
+            if (timeout != null) timeout.cancel(false);
+            // The thread analyses the next repository, which must not see the interrupt
+            Thread.interrupted();
+            GitCommands.resetCancellation(entry.path());
+        }
+        System.out.printf("[%s] Timed out after %d minutes, skipping...%n", new File(entry.path()).getName(), entry.timeoutMinutes());
+        return null;
+    }
+
+    /**
+     * @return the size of the objects of the repository in KiB, which git knows without reading them, or 0 if unknown.
+     */
+    private static long estimateSize(String repoPath) {
+        long[] size = { 0 };
+        GitCommands.runCommand(repoPath, COUNT_OBJECTS_COMMAND, (line) -> {
+            // "size" is the size of the loose objects, "size-pack" of the packed ones
+            String[] parts = line.split(":\\s*");
+            if (parts.length == 2 && (parts[0].equals("size") || parts[0].equals("size-pack"))) {
+                try {
+                    size[0] += Long.parseLong(parts[1].trim());
+                } catch (NumberFormatException ignored) {
+                    // Not a size
+                }
+            }
+        });
+        return size[0];
+    }
+}
@@ -0,0 +1,99 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.FileStats;
+import net.justonedev.statswrapper.UserStats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The history stats of a repository and the ref tips they were computed from, so that the next run only reads newer
+ * commits. The file stats have no line counts, and the cache is only used if the settings match.
+ */
+record StatsCache(String settings, List<String> tips, String mainTip, UserStats allBranches, UserStats mainBranch, FileStats fileStats) {
+
+    private static final int FORMAT_VERSION = 5;
+    private static final String FILENAME = "stats-cache.bin";
+
+    /**
+     * @return the cache, or null if there is none or it cannot be read.
+     */
+    static StatsCache load(File cacheDirectory) {
+        File file = new File(cacheDirectory, FILENAME);
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != FORMAT_VERSION) return null;
+            String settings = readString(in);
+            int tipCount = in.readInt();
+            List<String> tips = new ArrayList<>(tipCount);
+            for (int i = 0; i < tipCount; i++) {
+                tips.add(in.readUTF());
+            }
+            String mainTip = in.readUTF();
+            return new StatsCache(settings, tips, mainTip, UserStats.readFrom(in), UserStats.readFrom(in), FileStats.readFrom(in));
+        } catch (IOException e) {
+            System.out.printf("Warning: Could not read stats cache %s: %s%n", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The previous cache is only replaced once the new one was written completely.
+     */
+    void save(File cacheDirectory) {
+        File file = new File(cacheDirectory, FILENAME);
+        File tempFile = new File(cacheDirectory, FILENAME + ".tmp");
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+            System.out.printf("Warning: Could not create cache directory %s%n", cacheDirectory);
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile))))) {
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, settings);
+            out.writeInt(tips.size());
+            for (String tip : tips) {
+                out.writeUTF(tip);
+            }
+            out.writeUTF(mainTip);
+            allBranches.writeTo(out);
+            mainBranch.writeTo(out);
+            fileStats.writeTo(out);
+        } catch (IOException e) {
+            System.out.printf("Warning: Could not write stats cache %s: %s%n", file, e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.printf("Warning: Could not write stats cache %s: %s%n", file, e.getMessage());
+        }
+    }
+
+    // The settings contain the path filter, which may be longer than the 64 KB writeUTF allows
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Invalid string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.RepositoryStats;
+import net.justonedev.statswrapper.UserStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Writes the stats of all repositories into a file. See {@link ExportFormat} for the available formats.
+ */
+@FunctionalInterface
+public interface StatsExporter {
+
+    void export(File file, List<RepositoryStats> repositories) throws IOException;
+
+    /**
+     * The per-author tables of a repository, in the order the machine-readable formats write them.
+     */
+    enum UserTable {
+        // Additions, deletions and commits of all branches
+        ALL_BRANCHES("all_branches", RepositoryStats::fullBranchStats),
+        // Additions, deletions and commits of the main branch
+        MAIN_BRANCH("main_branch", RepositoryStats::mainBranchStats),
+        // Additions are all lines written, deletions are the lines without comments
+        BLAME("blame", RepositoryStats::contributionStats),
+        // Additions are comment lines, deletions are empty lines
+        BLAME_COMMENTS("blame_comments", RepositoryStats::contributionsCommentsStats);
+
+        /**
+         * The name of the table for the file stats, which follows after the user tables.
+         */
+        public static final String FILES = "files";
+
+        private final String name;
+        private final Function<RepositoryStats, UserStats> getter;
+
+        UserTable(String name, Function<RepositoryStats, UserStats> getter) {
+            this.name = name;
+            this.getter = getter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public UserStats get(RepositoryStats repository) {
+            return getter.apply(repository);
+        }
+    }
+}
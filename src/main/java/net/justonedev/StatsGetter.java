@@ -1,186 +1,590 @@
 package net.justonedev;
 
+import lombok.Setter;
 import net.justonedev.statswrapper.FileStats;
 import net.justonedev.statswrapper.MutableIntegerPair;
 import net.justonedev.statswrapper.RepositoryStats;
 import net.justonedev.statswrapper.UserStats;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.regex.Pattern;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class StatsGetter {
 
-    private static final Pattern REGEX_COMMIT_TITLE = Pattern.compile("^commit ([\\da-z]+) ([a-zA-Z\\d\\s]+)$");
-    private static final Pattern REGEX_CHANGES = Pattern.compile("^(-?\\d+)\\s+(-?\\d+)\\s+([\\da-zA-Z/\\-._()\\[\\]{}=>\\s]+)$");
-    private static final String REGEX_EXCLUDED_FILES = ".*/?(package(-lock)?\\.json|p?npm-lock\\.yaml|(\\.(py|xlsx|dot|svg)))$";
+    // Inside the cache directory, holds the time of the last successful fetch
+    private static final String FETCH_STATE_FILE = "last-fetch";
+    private static final BlameCache BLAME_CACHE = new BlameCache(new File(Config.BLAME_CACHE_DIRECTORY), Config.BLAME_CACHE_MAX_SIZE);
 
-    private double secondsSince(long nanoTime) {
-        return Math.round((System.nanoTime() - nanoTime) / 1000000d) / 1000d;
+    private final String mainBranch;
+    @Setter
+    private BlameMode blameMode = Config.BLAME_MODE;
+    @Setter
+    private int blameVerificationSamples = Config.BLAME_VERIFICATION_SAMPLES;
+    @Setter
+    private HistoryBackend historyBackend = Config.HISTORY_BACKEND;
+    @Setter
+    private FetchPolicy fetchPolicy = Config.FETCH_POLICY;
+    @Setter
+    private long fetchMaxAgeMinutes = Config.FETCH_MAX_AGE_MINUTES;
+    @Setter
+    private boolean useStatsCache = Config.USE_STATS_CACHE;
+    @Setter
+    private boolean useBlameCache = Config.USE_BLAME_CACHE;
+    // Loaded from the repository on first use if not set
+    @Setter
+    private PathFilter pathFilter = null;
+    // Loaded from the repository on first use if not set
+    @Setter
+    private AuthorAliases aliases = null;
+    // The revision whose files are blamed, the working tree if not set. Bare repositories use HEAD then
+    @Setter
+    private String revision = null;
+
+    public StatsGetter() {
+        this(Config.MAIN_BRANCH);
+    }
+
+    public StatsGetter(String mainBranch) {
+        this.mainBranch = mainBranch;
     }
 
-    public RepositoryStats getAllGitStats(String repoPath) {
-        repoPath = repoPath.replace('\\', '/');
+    public RepositoryStats getAllGitStats(String path) {
+        String repoPath = path.replace('\\', '/');
         String projectName = new File(repoPath).getName();
         String prefix = "[%s] ".formatted(projectName);
         String TIME_FORMAT = prefix + "%s   (%.3f s)%n";
 
-        System.out.println(prefix + "Updating repository for all branches (fetch)...");
-        long time = System.nanoTime();
-        GitCommands.runCommand(repoPath, "git fetch --all");
-        System.out.printf(TIME_FORMAT, "Updated repository for all branches", secondsSince(time));
-
         UserStats userStatsAllBranches = new UserStats();
         UserStats userStatsMainOnly = new UserStats();
         FileStats fileStats = new FileStats();
         UserStats finalCodeContributions = new UserStats();
         UserStats contributionsComments = new UserStats();
 
-        System.out.println(prefix + "Fetching for all branches...");
-        time = System.nanoTime();
-        fillGitStatistics(repoPath, "git log --all --no-merges --numstat --pretty=format:\"commit %H %an\"", userStatsAllBranches, fileStats);
-        System.out.printf(TIME_FORMAT, "Finished fetching for all branches", secondsSince(time));
+        // The working tree does not depend on the remotes, so it can be blamed while fetching. The lines are kept apart
+        // until the history, which is saved to the stats cache without any lines, was read
+        Thread backgroundFetch = null;
+        FileStats blamedFiles = new FileStats();
+        if (fetchPolicy == FetchPolicy.BACKGROUND && getBlameRevision(repoPath) == null) {
+            backgroundFetch = Thread.ofVirtual().start(() -> fetch(repoPath, TIME_FORMAT));
+            blame(repoPath, TIME_FORMAT, finalCodeContributions, contributionsComments, blamedFiles);
+            try {
+                backgroundFetch.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            fetch(repoPath, TIME_FORMAT);
+        }
+        // A cancelled repository stops between the phases, before anything is cached or returned
+        GitCommands.checkCancelled(repoPath);
 
-        System.out.println(prefix + "Fetching for main branch...");
-        time = System.nanoTime();
-        fillGitStatistics(repoPath, "git log main --numstat --pretty=format:\"commit %H %an\"", userStatsMainOnly);
-        System.out.printf(TIME_FORMAT, "Finished fetching for main branch", secondsSince(time));
+        System.out.printf("%sFetching for all branches and %s...%n", prefix, mainBranch);
+        try (var phase = Metrics.INSTANCE.phase(repoPath, Metrics.Phase.LOG)) {
+            fillGitStatistics(repoPath, userStatsAllBranches, userStatsMainOnly, fileStats);
+            System.out.printf(TIME_FORMAT, "Finished fetching for all branches and " + mainBranch, phase.seconds());
+        }
+        GitCommands.checkCancelled(repoPath);
 
-        System.out.println(prefix + "Blaming current codebase...");
-        time = System.nanoTime();
-        fillGitBlameStatistics(repoPath, finalCodeContributions, contributionsComments, fileStats);
-        System.out.printf(TIME_FORMAT, "Finished blaming", secondsSince(time));
+        if (backgroundFetch == null) blame(repoPath, TIME_FORMAT, finalCodeContributions, contributionsComments, fileStats);
+        else fileStats.addAllLines(blamedFiles);
+        GitCommands.checkCancelled(repoPath);
 
         return new RepositoryStats(projectName, userStatsAllBranches, userStatsMainOnly, finalCodeContributions, contributionsComments, fileStats);
     }
 
-    public void fillGitStatistics(String repoPath, String command, UserStats userStats) {
-        fillGitStatistics(repoPath, command, userStats, null);
+    private void blame(String repoPath, String timeFormat, UserStats finalCodeContributions, UserStats contributionsComments, FileStats fileStats) {
+        System.out.printf("[%s] Blaming current codebase...%n", new File(repoPath).getName());
+        try (var phase = Metrics.INSTANCE.phase(repoPath, Metrics.Phase.BLAME)) {
+            fillGitBlameStatistics(repoPath, finalCodeContributions, contributionsComments, fileStats);
+            System.out.printf(timeFormat, "Finished blaming", phase.seconds());
+        }
+    }
+
+    /**
+     * Fetches all remotes, unless the {@link FetchPolicy} says otherwise. The time of every successful fetch is
+     * remembered for {@link FetchPolicy#IF_OLDER}.
+     */
+    private void fetch(String repoPath, String timeFormat) {
+        String prefix = "[%s] ".formatted(new File(repoPath).getName());
+        if (fetchPolicy == FetchPolicy.SKIP) {
+            System.out.println(prefix + "Skipping fetch...");
+            return;
+        }
+        File cacheDirectory = getCacheDirectory(repoPath);
+        File stateFile = cacheDirectory == null ? null : new File(cacheDirectory, FETCH_STATE_FILE);
+        if (fetchPolicy == FetchPolicy.IF_OLDER && stateFile != null) {
+            long minutes = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - readLastFetch(stateFile));
+            if (minutes < fetchMaxAgeMinutes) {
+                System.out.printf("%sLast fetch was %d minutes ago, skipping fetch...%n", prefix, minutes);
+                return;
+            }
+        }
+
+        System.out.println(prefix + "Updating repository for all branches (fetch)...");
+        try (var phase = Metrics.INSTANCE.phase(repoPath, Metrics.Phase.FETCH)) {
+            String command = "git fetch --all";
+            var result = GitCommands.runCommand(repoPath, command, (line) -> { });
+            warnIfFailed(repoPath, command, result);
+            if (result.isSuccess() && stateFile != null) writeLastFetch(stateFile);
+            System.out.printf(timeFormat, "Updated repository for all branches", phase.seconds());
+        }
+    }
+
+    /**
+     * @return the time of the last fetch in milliseconds since the epoch, or 0 if unknown.
+     */
+    private static long readLastFetch(File stateFile) {
+        try {
+            return Long.parseLong(Files.readString(stateFile.toPath()).trim());
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void writeLastFetch(File stateFile) {
+        try {
+            Files.createDirectories(stateFile.getParentFile().toPath());
+            Files.writeString(stateFile.toPath(), Long.toString(System.currentTimeMillis()));
+        } catch (IOException e) {
+            System.out.printf("Warning: Could not write %s: %s%n", stateFile, e.getMessage());
+        }
     }
 
-    public void fillGitStatistics(String repoPath, String command, UserStats userStats, FileStats fileStats) {
-        List<String> allStats = GitCommands.runCommand(repoPath, command);
-        String currentAuthor = null;
-        int currentAdditions = 0, currentDeletions = 0;
-        Set<String> commits = new HashSet<>();
+    /**
+     * Walks the history of all branches once. Merges only count towards the main branch, other commits towards all
+     * branches and, if reachable from it, the main branch. With the stats cache, only new commits are read.
+     */
+    public void fillGitStatistics(String repoPath, UserStats userStatsAllBranches, UserStats userStatsMainOnly, FileStats fileStats) {
+        String prefix = "[%s] ".formatted(new File(repoPath).getName());
+        List<String> tips = new ArrayList<>();
+        // Only complete stats are cached, otherwise the missing commits would count as already read on the next run
+        boolean complete = GitCommands.runCommand(repoPath, "git rev-parse --all", tips::add).isSuccess();
+        readLines(repoPath, "git rev-parse --verify --quiet HEAD").forEach(tips::add);
+        String mainTip = String.join("", readLines(repoPath, "git rev-parse --verify --quiet \"%s^{commit}\"".formatted(mainBranch)));
+        if (mainTip.isEmpty()) System.out.printf("%sWarning: Main branch \"%s\" does not exist%n", prefix, mainBranch);
 
-        for (String stat : allStats) {
-            var matcher = REGEX_COMMIT_TITLE.matcher(stat);
-            if (matcher.matches()) {
-                String commit = matcher.group(1);
-                if (!commits.add(commit)) {
-                    // Skip commit as we already know it
-                    currentAuthor = null;
-                    continue;
+        File cacheDirectory = useStatsCache ? getCacheDirectory(repoPath) : null;
+        StatsCache cache = cacheDirectory == null ? null : StatsCache.load(cacheDirectory);
+        if (cache != null && !isCacheValid(repoPath, cache, mainTip)) {
+            System.out.println(prefix + "History was rewritten or settings changed, ignoring cached stats...");
+            cache = null;
+        }
+        List<String> knownTips = List.of();
+        String knownMainTip = "";
+        if (cache != null) {
+            userStatsAllBranches.addAllChanges(cache.allBranches());
+            userStatsMainOnly.addAllChanges(cache.mainBranch());
+            fileStats.addAllChanges(cache.fileStats());
+            knownTips = cache.tips();
+            knownMainTip = cache.mainTip();
+        }
+
+        if (historyBackend == HistoryBackend.OBJECT_STORE
+                && readHistoryInProcess(repoPath, tips, mainTip, knownTips, knownMainTip, userStatsAllBranches, userStatsMainOnly, fileStats)) {
+            saveCache(repoPath, cacheDirectory, complete, tips, mainTip, userStatsAllBranches, userStatsMainOnly, fileStats);
+            return;
+        }
+
+        CommitIdSet mainCommits = new CommitIdSet();
+        if (!mainTip.isEmpty()) {
+            String command = "git rev-list %s%s".formatted(mainTip, knownMainTip.isEmpty() ? "" : " ^" + knownMainTip);
+            try (var phase = Metrics.INSTANCE.phase(repoPath, Metrics.Phase.MAIN_LOG)) {
+                var result = GitCommands.runCommand(repoPath, command, mainCommits::add);
+                warnIfFailed(repoPath, command, result);
+                complete &= result.isSuccess();
+            }
+        }
+
+        // Excluded files are already skipped by git. --full-history and --sparse keep commits that only change excluded files.
+        PathFilter filter = getPathFilter(repoPath);
+        String pathspecs = filter.toPathspecs();
+        CommitStatsCollector collector = new CommitStatsCollector(filter, getAliases(repoPath), mainCommits, userStatsAllBranches, userStatsMainOnly, fileStats);
+        NumstatParser parser = new NumstatParser(collector);
+        String command = "git log --all --full-history --sparse --stdin -z --numstat --pretty=format:\"%s\" %s".formatted(NumstatParser.LOG_FORMAT, pathspecs);
+        var result = GitCommands.runCommandStreaming(repoPath, command, knownTips.stream().map("^%s"::formatted).toList(), parser::parse);
+        collector.flush();
+        warnIfFailed(repoPath, command, result);
+        complete &= result.isSuccess();
+        Metrics.INSTANCE.count(Metrics.Counter.COMMITS_PARSED, collector.commits.size());
+
+        // Commits that are new on the main branch, but were already analysed as part of another branch
+        List<String> remainingMainCommits = collector.getRemainingMainCommits();
+        if (!remainingMainCommits.isEmpty()) {
+            try (var phase = Metrics.INSTANCE.phase(repoPath, Metrics.Phase.MAIN_LOG)) {
+                int parsed = collector.commits.size();
+                collector.countTowardsAllBranches = false;
+                command = "git log --no-walk=unsorted --full-history --sparse --stdin -z --numstat --pretty=format:\"%s\" %s".formatted(NumstatParser.LOG_FORMAT, pathspecs);
+                result = GitCommands.runCommandStreaming(repoPath, command, remainingMainCommits, parser::parse);
+                collector.flush();
+                warnIfFailed(repoPath, command, result);
+                complete &= result.isSuccess();
+                Metrics.INSTANCE.count(Metrics.Counter.COMMITS_PARSED, collector.commits.size() - parsed);
+            }
+        }
+
+        saveCache(repoPath, cacheDirectory, complete, tips, mainTip, userStatsAllBranches, userStatsMainOnly, fileStats);
+    }
+
+    private void saveCache(String repoPath, File cacheDirectory, boolean complete, List<String> tips, String mainTip,
+                           UserStats userStatsAllBranches, UserStats userStatsMainOnly, FileStats fileStats) {
+        if (cacheDirectory == null) return;
+        if (!complete || GitCommands.isCancelled(repoPath)) {
+            System.out.printf("[%s] Warning: Reading the history failed, the stats are not cached%n", new File(repoPath).getName());
+            return;
+        }
+        new StatsCache(getCacheSettings(repoPath), tips, mainTip, userStatsAllBranches, userStatsMainOnly, fileStats).save(cacheDirectory);
+    }
+
+    /**
+     * Reads the commits of {@link #fillGitStatistics} from the object database, or returns false if it cannot be read.
+     */
+    private boolean readHistoryInProcess(String repoPath, List<String> tips, String mainTip, List<String> knownTips, String knownMainTip,
+                                         UserStats userStatsAllBranches, UserStats userStatsMainOnly, FileStats fileStats) {
+        String prefix = "[%s] ".formatted(new File(repoPath).getName());
+        List<String> gitDirectory = readLines(repoPath, "git rev-parse --absolute-git-dir");
+        if (gitDirectory.isEmpty()) return false;
+        // Collected separately, so that nothing is counted twice if git has to take over
+        UserStats allBranches = new UserStats(), mainOnly = new UserStats();
+        FileStats files = new FileStats();
+        PathFilter filter = getPathFilter(repoPath);
+        try (ObjectStore store = ObjectStore.open(new File(gitDirectory.getFirst()))) {
+            ObjectStoreLog log = new ObjectStoreLog(store, new File(gitDirectory.getFirst()), filter);
+            CommitIdSet mainCommits = new CommitIdSet();
+            if (!mainTip.isEmpty()) {
+                try (var phase = Metrics.INSTANCE.phase(repoPath, Metrics.Phase.MAIN_LOG)) {
+                    mainCommits = log.revList(List.of(mainTip), knownMainTip.isEmpty() ? List.of() : List.of(knownMainTip));
                 }
-                if (currentAuthor != null) {
-                    userStats.addChanges(currentAuthor, currentAdditions, currentDeletions);
-                    userStats.addCommit(currentAuthor);
+            }
+            CommitStatsCollector collector = new CommitStatsCollector(filter, getAliases(repoPath), mainCommits, allBranches, mainOnly, files);
+            log.log(tips, knownTips, collector);
+            collector.flush();
+
+            // Commits that are new on the main branch, but were already analysed as part of another branch
+            List<String> remainingMainCommits = collector.getRemainingMainCommits();
+            if (!remainingMainCommits.isEmpty()) {
+                try (var phase = Metrics.INSTANCE.phase(repoPath, Metrics.Phase.MAIN_LOG)) {
+                    collector.countTowardsAllBranches = false;
+                    log.show(remainingMainCommits, collector);
+                    collector.flush();
                 }
-                currentAuthor = Config.getAlias(matcher.group(2));
-                currentAdditions = 0;
-                currentDeletions = 0;
-                continue;
-            } else if (currentAuthor == null) continue;
-
-            matcher = REGEX_CHANGES.matcher(stat);
-            if (!matcher.matches()) continue;
-            String file = matcher.group(3);
-            if (file.matches(REGEX_EXCLUDED_FILES)) continue;
-            int add = Integer.parseInt(matcher.group(1));
-            int del = Integer.parseInt(matcher.group(2));
-            currentAdditions += add;
-            currentDeletions += del;
-            if (fileStats != null) fileStats.addChanges(file, add, del);
-        }
-        if (currentAuthor != null) {
+            }
+            Metrics.INSTANCE.count(Metrics.Counter.COMMITS_PARSED, collector.commits.size());
+        } catch (IOException e) {
+            GitCommands.checkCancelled(repoPath);
+            System.out.printf("%sWarning: Could not read the object database (%s), falling back to git%n", prefix, e.getMessage());
+            return false;
+        }
+        userStatsAllBranches.addAllChanges(allBranches);
+        userStatsMainOnly.addAllChanges(mainOnly);
+        fileStats.addAllChanges(files);
+        return true;
+    }
+
+    private boolean isCacheValid(String repoPath, StatsCache cache, String mainTip) {
+        if (!cache.settings().equals(getCacheSettings(repoPath))) return false;
+        if (!cache.mainTip().isEmpty()) {
+            if (mainTip.isEmpty()) return false;
+            String command = "git merge-base --is-ancestor %s %s".formatted(cache.mainTip(), mainTip);
+            if (!GitCommands.runCommand(repoPath, command, (line) -> { }).isSuccess()) return false;
+        }
+        // Every commit that was analysed before must still be reachable, otherwise it would be counted wrongly
+        List<String> unreachable = new ArrayList<>();
+        var result = GitCommands.runCommand(repoPath, "git rev-list --max-count=1 --stdin --not --all", cache.tips(), unreachable::add);
+        return result.isSuccess() && unreachable.isEmpty();
+    }
+
+    private String getCacheSettings(String repoPath) {
+        return "%s|%s|%s".formatted(mainBranch, getPathFilter(repoPath), getAliases(repoPath));
+    }
+
+    private AuthorAliases getAliases(String repoPath) {
+        if (aliases == null) aliases = AuthorAliases.forRepository(repoPath);
+        return aliases;
+    }
+
+    private PathFilter getPathFilter(String repoPath) {
+        if (pathFilter == null) pathFilter = PathFilter.load(repoPath, List.of());
+        return pathFilter;
+    }
+
+    private static File getCacheDirectory(String repoPath) {
+        String gitDirectory = String.join("", readLines(repoPath, "git rev-parse --absolute-git-dir"));
+        if (gitDirectory.isEmpty()) return null;
+        return new File(gitDirectory, Config.CACHE_DIRECTORY_NAME);
+    }
+
+    private static List<String> readLines(String repoPath, String command) {
+        List<String> lines = new ArrayList<>();
+        GitCommands.runCommand(repoPath, command, lines::add);
+        return lines;
+    }
+
+    static void warnIfFailed(String repoPath, String command, GitCommands.CommandResult result) {
+        if (result.isSuccess()) return;
+        System.out.printf("[%s] Warning: \"%s\" exited with code %d%n", new File(repoPath).getName(), command, result.exitCode());
+        result.errors().forEach(error -> System.out.printf("[%s]   %s%n", new File(repoPath).getName(), error));
+    }
+
+    /**
+     * Sums up the changes per commit of a {@code git log --numstat} while git is still running.
+     */
+    static final class CommitStatsCollector implements NumstatParser.Listener {
+        private final PathFilter filter;
+        private final AuthorAliases aliases;
+        private final CommitIdSet mainCommits;
+        private final UserStats userStatsAllBranches;
+        private final UserStats userStatsMainOnly;
+        private final FileStats fileStats;
+        private final CommitIdSet commits = new CommitIdSet();
+        private boolean countTowardsAllBranches = true;
+        // The ID of the author of the commit that is currently being read, or -1 if it is skipped
+        private int currentAuthor = -1;
+        private boolean currentIsOnAllBranches = false, currentIsOnMain = false;
+        private long currentAdditions = 0, currentDeletions = 0;
+
+        CommitStatsCollector(PathFilter filter, AuthorAliases aliases, CommitIdSet mainCommits, UserStats userStatsAllBranches, UserStats userStatsMainOnly, FileStats fileStats) {
+            this.filter = filter;
+            this.aliases = aliases;
+            this.mainCommits = mainCommits;
+            this.userStatsAllBranches = userStatsAllBranches;
+            this.userStatsMainOnly = userStatsMainOnly;
+            this.fileStats = fileStats;
+        }
+
+        @Override
+        public void onCommit(CharSequence commit, boolean merge, String author) {
+            flush();
+            // Skip commit if we already know it
+            if (!commits.add(commit)) return;
+            currentAuthor = aliases.getId(author);
+            currentIsOnAllBranches = countTowardsAllBranches && !merge;
+            currentIsOnMain = mainCommits.contains(commit);
+        }
+
+        @Override
+        public void onChange(String file, int additions, int deletions) {
+            if (currentAuthor < 0) return;
+            if (filter.isExcluded(file)) return;
+            currentAdditions += additions;
+            currentDeletions += deletions;
+            if (currentIsOnAllBranches) fileStats.addChanges(file, additions, deletions);
+        }
+
+        /**
+         * Adds the commit that is currently being read to the stats.
+         */
+        void flush() {
+            if (currentAuthor >= 0) {
+                if (currentIsOnAllBranches) addCommit(userStatsAllBranches);
+                if (currentIsOnMain) addCommit(userStatsMainOnly);
+            }
+            currentAuthor = -1;
+            currentAdditions = 0;
+            currentDeletions = 0;
+        }
+
+        /**
+         * @return the commits of the main branch that were not read yet, as they are not reachable from other tips.
+         */
+        List<String> getRemainingMainCommits() {
+            List<String> remaining = new ArrayList<>();
+            mainCommits.forEach((commit) -> {
+                if (!commits.contains(commit)) remaining.add(commit);
+            });
+            return remaining;
+        }
+
+        private void addCommit(UserStats userStats) {
             userStats.addChanges(currentAuthor, currentAdditions, currentDeletions);
-            userStats.addCommit(currentAuthor);
+            userStats.addCommits(currentAuthor, 1);
         }
     }
 
     //region GIT BLAME
 
-    private static final Pattern REGEX_BLAME_LINE = Pattern.compile("^[a-z\\d]+\\s(?:.*\"?\\s)?\\((.+)\\s\\d{4}-\\d{2}-\\d{2}\\s\\d{2}:\\d{2}:\\d{2}\\s[^)]+\\)\\s?(.*)$");
     private static final String REGEX_BLAME_COMMENT = "^((//|/?\\*.*)|$)";
 
     // Additions: All File Changes, Deletions: File Changes (no comments)
     public void fillGitBlameStatistics(final String repoPath, UserStats userStats, UserStats userStatsComments, FileStats fileStats) {
-        var files = getAllBlamableFiles(repoPath);
-        files.parallelStream().map((file) -> getBlame(repoPath, file)).forEach(e -> {
-            userStats.addAllBlames(e.blame);
-            userStatsComments.addAllBlames(e.commentBlame);
-            fileStats.addAllBlames(e.file, e.blame);
-        });
+        ConcurrentLinkedQueue<String> files;
+        String revision;
+        try (var phase = Metrics.INSTANCE.phase(repoPath, Metrics.Phase.FILE_DISCOVERY)) {
+            revision = getBlameRevision(repoPath);
+            files = getAllBlamableFiles(repoPath, revision);
+        }
+        GitCommands.checkCancelled(repoPath);
+        IncrementalBlame blamer = new IncrementalBlame(repoPath, revision, getAliases(repoPath));
+        List<StringMapWrapper> blames = switch (blameMode) {
+            case GIT_BLAME -> blameWithGit(repoPath, revision, blamer, files);
+            case HISTORY_REPLAY -> {
+                var replayed = HistoryReplayBlame.blame(repoPath, revision, files, getAliases(repoPath), (fallbackFiles) -> blameWithGit(repoPath, revision, blamer, fallbackFiles));
+                if (blameVerificationSamples > 0) verifyBlame(repoPath, blamer, replayed);
+                yield replayed;
+            }
+        };
+        // Every thread sums up its part of the files on its own, the parts are merged at the end
+        try (var phase = Metrics.INSTANCE.phase(repoPath, Metrics.Phase.MERGE)) {
+            BlameTotals totals = BlameTotals.sum(blames);
+            userStats.addAllChanges(totals.userStats);
+            userStatsComments.addAllChanges(totals.userStatsComments);
+            fileStats.addAllLines(totals.fileStats);
+        }
+        if (useBlameCache) BLAME_CACHE.evict();
     }
 
-    private ConcurrentLinkedQueue<String> getAllBlamableFiles(String repoPath) {
-        ConcurrentLinkedQueue<String> files = new ConcurrentLinkedQueue<>();
-        getAllBlamableFiles(new File(repoPath), files, false);
-        return files;
+    /**
+     * Blames the files with git blame, using the blame cache.
+     */
+    private List<StringMapWrapper> blameWithGit(String repoPath, String revision, IncrementalBlame blamer, Collection<String> files) {
+        List<String> relativeFiles = files.stream().map((file) -> getRelativePath(repoPath, file)).toList();
+        Map<String, String> cacheKeys = useBlameCache ? BlameCache.getKeys(repoPath, revision, getPathFilter(repoPath), relativeFiles) : Map.of();
+        // Only the files that are not cached need their lines
+        blamer.readAhead(relativeFiles.stream().filter((file) -> !BLAME_CACHE.contains(cacheKeys.get(file))).toList());
+        return blameConcurrently(repoPath, files, (file) -> getBlame(repoPath, blamer, file, cacheKeys.get(getRelativePath(repoPath, file))));
     }
 
-    private void getAllBlamableFiles(File currentFile, ConcurrentLinkedQueue<String> files, boolean insideSrcFolder) {
-        if (currentFile.isDirectory()) {
-            var allFiles = currentFile.listFiles();
-            if (allFiles != null) {
-                for (File file : allFiles) {
-                    boolean insideSrc = insideSrcFolder || file.getName().equals("src");
-                    if (insideSrcFolder || !currentFile.isDirectory() || file.getName().equals("src") || hasSrcChild(file, Config.SRC_FOLDER_MAX_DEPTH)) getAllBlamableFiles(file, files, insideSrc);
-                }
-            }
-            return;
+    /**
+     * Blames every file on its own virtual thread, the {@link GitScheduler} limits how many git processes run.
+     */
+    private static List<StringMapWrapper> blameConcurrently(String repoPath, Collection<String> files, Function<String, StringMapWrapper> blame) {
+        List<Future<StringMapWrapper>> futures;
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // Files that were not started yet are skipped once the repository is cancelled
+            futures = files.stream().map((file) -> executor.submit(() -> GitCommands.isCancelled(repoPath) ? null : blame.apply(file))).toList();
         }
-        if (currentFile.getName().matches(REGEX_EXCLUDED_FILES)) return;
-        files.add(currentFile.getAbsolutePath());
+        // Closing the executor waited for all tasks
+        GitCommands.checkCancelled(repoPath);
+        return futures.stream().map(Future::resultNow).toList();
     }
 
-    private static boolean hasSrcChild(final File file, int depth) {
-        if (depth == 0) return false;
-        File[] files = file.listFiles();
-        if (files == null) return false;
-        for (File child : files) {
-            if (child.getName().equals("src")) return true;
-            else if (depth > 1 && child.isDirectory()) hasSrcChild(child, depth - 1);
+    /**
+     * The blame of a part of the files. Only used by one thread at a time, as the stats are not thread-safe.
+     */
+    static final class BlameTotals {
+        final UserStats userStats = new UserStats();
+        final UserStats userStatsComments = new UserStats();
+        final FileStats fileStats = new FileStats();
+
+        /**
+         * Sums up the blames in parallel, every thread on its own part.
+         */
+        static BlameTotals sum(List<StringMapWrapper> blames) {
+            return blames.parallelStream().collect(BlameTotals::new, BlameTotals::add, BlameTotals::addAll);
+        }
+
+        private void add(StringMapWrapper blame) {
+            userStats.addAllBlames(blame.blame);
+            userStatsComments.addAllBlames(blame.commentBlame);
+            fileStats.addAllBlames(blame.file, blame.blame);
+        }
+
+        private void addAll(BlameTotals totals) {
+            userStats.addAllChanges(totals.userStats);
+            userStatsComments.addAllChanges(totals.userStatsComments);
+            fileStats.addAllLines(totals.fileStats);
         }
-        return false;
     }
 
-    // Additions mark
-    private StringMapWrapper getBlame(String repoPath, String filePath) {
-        //System.out.println("Blaming " + filePath);
-        List<String> allBlocks = GitCommands.runCommand(repoPath, "git blame --no-line-porcelain \"%s\"".formatted(filePath));
-        Map<String, MutableIntegerPair> lineBlame = new HashMap<>();
-        Map<String, MutableIntegerPair> commentBlame = new HashMap<>();
+    /**
+     * Compares the blame of randomly sampled files against git blame and prints every file that differs.
+     */
+    private void verifyBlame(String repoPath, IncrementalBlame blamer, List<StringMapWrapper> blames) {
+        String prefix = "[%s] ".formatted(new File(repoPath).getName());
+        List<StringMapWrapper> samples = new ArrayList<>(blames);
+        Collections.shuffle(samples);
+        samples = samples.subList(0, Math.min(blameVerificationSamples, samples.size()));
 
-        for (String line : allBlocks) {
-            var matcher = REGEX_BLAME_LINE.matcher(line);
-            if (!matcher.matches()) {
+        int matching = 0;
+        for (StringMapWrapper sample : samples) {
+            var expected = getBlame(repoPath, blamer, new File(repoPath, sample.file).getPath());
+            if (toComparable(expected.blame).equals(toComparable(sample.blame)) && toComparable(expected.commentBlame).equals(toComparable(sample.commentBlame))) {
+                matching++;
                 continue;
             }
-            String author = Config.getAlias(matcher.group(1).trim());
-            String code = matcher.group(2).trim();
-            var current = lineBlame.get(author);
-            if (current == null) current = new MutableIntegerPair();
-            var currentComment = commentBlame.get(author);
-            if (currentComment == null) currentComment = new MutableIntegerPair();
-            current.incrementFirst();
-            if (!code.matches(REGEX_BLAME_COMMENT)) current.incrementSecond();
-            else currentComment.incrementFirst();
-            if (code.trim().isEmpty()) currentComment.incrementSecond();
-            lineBlame.put(author, current);
-            commentBlame.put(author, currentComment);
+            System.out.printf("%sBlame mismatch for %s: expected %s, got %s%n", prefix, sample.file, toComparable(expected.blame), toComparable(sample.blame));
+        }
+        System.out.printf("%sVerified blame: %d of %d sampled files match git blame%n", prefix, matching, samples.size());
+    }
+
+    private static Map<String, List<Integer>> toComparable(Map<String, MutableIntegerPair> blame) {
+        Map<String, List<Integer>> comparable = new TreeMap<>();
+        blame.forEach((author, pair) -> comparable.put(author, List.of(pair.getFirst(), pair.getSecond())));
+        return comparable;
+    }
+
+    /**
+     * @return the absolute paths of the tracked files inside source folders, see {@link TrackedFiles#selectSourceFiles}.
+     */
+    private ConcurrentLinkedQueue<String> getAllBlamableFiles(String repoPath, String revision) {
+        ConcurrentLinkedQueue<String> files = new ConcurrentLinkedQueue<>();
+        List<String> tracked = TrackedFiles.list(repoPath, revision);
+        if (tracked == null) return files;
+        PathFilter filter = getPathFilter(repoPath);
+        for (String file : TrackedFiles.selectSourceFiles(tracked, Config.SRC_FOLDER_MAX_DEPTH)) {
+            if (!filter.isExcluded(file)) files.add(new File(repoPath, file).getAbsolutePath());
         }
+        return files;
+    }
+
+    /**
+     * @return the revision to blame, or null for the working tree.
+     */
+    private String getBlameRevision(String repoPath) {
+        if (revision != null) return revision;
+        return readLines(repoPath, "git rev-parse --is-bare-repository").contains("true") ? "HEAD" : null;
+    }
+
+    private StringMapWrapper getBlame(String repoPath, IncrementalBlame blamer, String filePath) {
+        return getBlame(repoPath, blamer, filePath, null);
+    }
+
+    /**
+     * Blames a file, using the blame cache if the file has a cache key.
+     */
+    private StringMapWrapper getBlame(String repoPath, IncrementalBlame blamer, String filePath, String cacheKey) {
+        String file = getRelativePath(repoPath, filePath);
+        String aliasesDescription = getAliases(repoPath).toString();
+        StringMapWrapper blame = cacheKey == null ? null : BLAME_CACHE.get(cacheKey, file, aliasesDescription);
+        if (blame == null) {
+            blame = blamer.blame(file);
+            // The blame of a cancelled repository may be cut short
+            if (cacheKey != null && !GitCommands.isCancelled(repoPath)) BLAME_CACHE.put(cacheKey, blame, aliasesDescription);
+        } else {
+            Metrics.INSTANCE.count(Metrics.Counter.BLAME_CACHE_HITS, 1);
+        }
+        return blame;
+    }
+
+    static String getRelativePath(String repoPath, String filePath) {
+        return filePath.replace('\\', '/').replaceAll("^(%s/?)".formatted(repoPath), "");
+    }
+
+    static boolean isCommentLine(String code) {
+        return code.matches(REGEX_BLAME_COMMENT);
+    }
 
-        return new StringMapWrapper(filePath.replace('\\', '/').replaceAll("^(%s/?)".formatted(repoPath), ""), lineBlame, commentBlame);
+    static void addBlamedLine(Map<String, MutableIntegerPair> lineBlame, Map<String, MutableIntegerPair> commentBlame, String author, boolean comment, boolean empty) {
+        var current = lineBlame.computeIfAbsent(author, (key) -> new MutableIntegerPair());
+        var currentComment = commentBlame.computeIfAbsent(author, (key) -> new MutableIntegerPair());
+        current.incrementFirst();
+        if (!comment) current.incrementSecond();
+        else currentComment.incrementFirst();
+        if (empty) currentComment.incrementSecond();
     }
 
-    private record StringMapWrapper(String file, Map<String, MutableIntegerPair> blame, Map<String, MutableIntegerPair> commentBlame) { }
+    record StringMapWrapper(String file, Map<String, MutableIntegerPair> blame, Map<String, MutableIntegerPair> commentBlame) { }
 
     //endregion
 
@@ -0,0 +1,108 @@
+package net.justonedev;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the files of a repository that git tracks, from the index or from the tree of a revision, so that untracked
+ * and ignored files are never looked at and bare repositories work as well.
+ */
+final class TrackedFiles {
+
+    private static final String SOURCE_FOLDER = "src";
+    private static final String GITLINK_MODE = "160000";
+
+    private TrackedFiles() {}
+
+    /**
+     * Lists the tracked files below a directory, of the given revision or of the index if it is null.
+     * @return the paths relative to the directory, or null if git failed.
+     */
+    static List<String> list(String repoPath, String revision) {
+        // Both print "<mode> <...>\t<path>", with -z the path is never quoted and every entry ends with a NUL byte
+        String command = revision == null ? "git ls-files -z --stage" : "git ls-tree -r -z \"%s\"".formatted(revision);
+        // Files with merge conflicts are listed once per stage
+        Set<String> files = new LinkedHashSet<>();
+        var result = GitCommands.runCommandStreaming(repoPath, command, (stream) -> readEntries(stream, files));
+        StatsGetter.warnIfFailed(repoPath, command, result);
+        return result.isSuccess() ? new ArrayList<>(files) : null;
+    }
+
+    private static void readEntries(InputStream stream, Set<String> files) throws IOException {
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] != 0) {
+                    entry.write(buffer[i]);
+                    continue;
+                }
+                addEntry(entry.toString(StandardCharsets.UTF_8), files);
+                entry.reset();
+            }
+        }
+    }
+
+    private static void addEntry(String entry, Set<String> files) {
+        int tab = entry.indexOf('\t');
+        // Submodules cannot be blamed in this repository
+        if (tab < 0 || entry.startsWith(GITLINK_MODE)) return;
+        files.add(entry.substring(tab + 1));
+    }
+
+    /**
+     * Selects every file below a folder called "src", as long as every folder on the way has one at most {@code maxDepth}
+     * levels below it. Keeps the given order.
+     */
+    static List<String> selectSourceFiles(Collection<String> files, int maxDepth) {
+        // Every folder that has a "src" folder in reach, found from the paths instead of listing each folder
+        Set<String> leadingToSource = new HashSet<>();
+        for (String file : files) {
+            List<Integer> separators = separators(file);
+            for (int component = 0; component <= separators.size(); component++) {
+                if (!isSourceFolder(file, separators, component)) continue;
+                for (int folder = Math.max(1, component - maxDepth + 1); folder <= component; folder++) {
+                    leadingToSource.add(file.substring(0, separators.get(folder - 1)));
+                }
+            }
+        }
+
+        List<String> selected = new ArrayList<>();
+        for (String file : files) {
+            List<Integer> separators = separators(file);
+            int source = 0;
+            while (source <= separators.size() && !isSourceFolder(file, separators, source)) source++;
+            if (source > separators.size()) continue;
+            boolean reachable = true;
+            for (int folder = 1; folder <= source && reachable; folder++) {
+                reachable = leadingToSource.contains(file.substring(0, separators.get(folder - 1)));
+            }
+            if (reachable) selected.add(file);
+        }
+        return selected;
+    }
+
+    private static List<Integer> separators(String file) {
+        List<Integer> separators = new ArrayList<>();
+        for (int i = file.indexOf('/'); i >= 0; i = file.indexOf('/', i + 1)) separators.add(i);
+        return separators;
+    }
+
+    /**
+     * @return whether the path component with the given index is called "src".
+     */
+    private static boolean isSourceFolder(String file, List<Integer> separators, int component) {
+        int start = component == 0 ? 0 : separators.get(component - 1) + 1;
+        int end = component == separators.size() ? file.length() : separators.get(component);
+        return end - start == SOURCE_FOLDER.length() && file.startsWith(SOURCE_FOLDER, start);
+    }
+}
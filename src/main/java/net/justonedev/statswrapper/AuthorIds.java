@@ -0,0 +1,46 @@
+package net.justonedev.statswrapper;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns every author into a dense int ID that all {@link UserStats} share, so they can use arrays. Thread-safe.
+ */
+public final class AuthorIds {
+
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // Only grows, a new array is published before the IDs that are stored in it
+    private static volatile String[] names = new String[64];
+    private static int size = 0;
+
+    private AuthorIds() {}
+
+    /**
+     * @return the ID of the author, which is assigned on the first call.
+     */
+    public static int of(String author) {
+        Integer id = ids.get(author);
+        return id != null ? id : register(author);
+    }
+
+    /**
+     * @return the author with the given ID.
+     */
+    public static String name(int id) {
+        return names[id];
+    }
+
+    private static int register(String author) {
+        synchronized (ids) {
+            Integer id = ids.get(author);
+            if (id != null) return id;
+            String[] current = names;
+            if (size == current.length) current = Arrays.copyOf(current, size * 2);
+            current[size] = author;
+            names = current;
+            ids.put(author, size);
+            return size++;
+        }
+    }
+}
@@ -4,10 +4,10 @@ import lombok.Getter;
 
 @Getter
 public class Changes {
-    private final int additions;
-    private final int deletions;
+    private final long additions;
+    private final long deletions;
 
-    public Changes(int additions, int deletions) {
+    public Changes(long additions, long deletions) {
         this.additions = additions;
         this.deletions = deletions;
     }
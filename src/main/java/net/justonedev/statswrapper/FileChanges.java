@@ -7,11 +7,18 @@ public class FileChanges extends Changes {
     private final String fileName;
     private final long lineCount;
     private final long lineCountLOC;
+    // Whether this is the row with the sum of all files that are not listed
+    private final boolean others;
 
-    public FileChanges(final String fileName, final int additions, final int deletions, final long lineCount, final long lineCountLOC) {
+    public FileChanges(final String fileName, final long additions, final long deletions, final long lineCount, final long lineCountLOC) {
+        this(fileName, additions, deletions, lineCount, lineCountLOC, false);
+    }
+
+    public FileChanges(final String fileName, final long additions, final long deletions, final long lineCount, final long lineCountLOC, final boolean others) {
         super(additions, deletions);
         this.fileName = fileName;
         this.lineCount = lineCount;
         this.lineCountLOC = lineCountLOC;
+        this.others = others;
     }
 }
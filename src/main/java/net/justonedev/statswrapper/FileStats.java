@@ -1,44 +1,82 @@
 package net.justonedev.statswrapper;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import static net.justonedev.statswrapper.UserStats.WEIGHT_ADDITIONS;
-import static net.justonedev.statswrapper.UserStats.WEIGHT_DELETIONS;
+import static net.justonedev.statswrapper.UserStats.OTHERS;
+import static net.justonedev.statswrapper.UserStats.getWeightedChanges;
 
+/**
+ * The changes and line counts per file, in a trie of path segments where every folder keeps the totals below it.
+ * Combined stats share subtrees, which are copied before either side changes them.
+ */
 public class FileStats {
-    private final Map<String, Integer> perFileAdditions;
-    private final Map<String, Integer> perFileDeletions;
-    private final Map<String, Long> perFileLines;
-    private final Map<String, Long> perFileLOC;
+    // Every path segment is stored once, no matter in how many paths and stats it appears
+    private static final Map<String, String> SEGMENTS = new ConcurrentHashMap<>();
+    private static final Comparator<FileChanges> BY_WEIGHTED_CHANGES = Comparator.comparingDouble((FileChanges change) -> getWeightedChanges(change.getAdditions(), change.getDeletions()))
+            .reversed().thenComparing(FileChanges::getFileName);
+
+    private Node root;
+    // Only nodes with this owner may be changed, all others are shared with other stats
+    private Object owner = new Object();
 
     public FileStats() {
-        perFileAdditions = new HashMap<>();
-        perFileDeletions = new HashMap<>();
-        perFileLines = new HashMap<>();
-        perFileLOC = new HashMap<>();
+        root = new Node(owner);
     }
 
-    public void addChanges(String file, int additions, int deletions) {
-        perFileAdditions.put(file, perFileAdditions.getOrDefault(file, 0) + additions);
-        perFileDeletions.put(file, perFileDeletions.getOrDefault(file, 0) + deletions);
+    public void addChanges(String file, long additions, long deletions) {
+        Node[] path = getPath(file);
+        Node node = path[path.length - 1];
+        int files = 0;
+        long lines = 0, linesOfCode = 0;
+        if (!node.file) {
+            // The lines of the file were not counted in the totals yet
+            node.file = true;
+            files = 1;
+            lines = node.lines;
+            linesOfCode = node.linesOfCode;
+        }
+        node.additions += additions;
+        node.deletions += deletions;
+        for (Node parent : path) parent.addTotals(files, additions, deletions, lines, linesOfCode);
     }
 
+    /**
+     * Adds the changes and lines of all files, sharing the files these stats do not have yet.
+     */
     public void addAllChanges(FileStats stats) {
-        for (var entry : stats.perFileAdditions.entrySet()) {
-            addChanges(entry.getKey(), entry.getValue(), stats.perFileDeletions.get(entry.getKey()));
-            incrementLines(entry.getKey(), getValue(stats.perFileLines.get(entry.getKey())), getValue(stats.perFileLOC.get(entry.getKey())));
-        }
+        root = own(root);
+        merge(root, stats.root, false);
+        stats.owner = new Object();
     }
 
     public void incrementLines(String file, long lines, long locs) {
-        perFileLines.put(file, perFileLines.getOrDefault(file, 0L) + lines);
-        if (locs > 0) perFileLOC.put(file, perFileLOC.getOrDefault(file, 0L) + locs);
+        long linesOfCode = Math.max(0, locs);
+        Node[] path = getPath(file);
+        Node node = path[path.length - 1];
+        node.lines += lines;
+        node.linesOfCode += linesOfCode;
+        if (node.file) {
+            for (Node parent : path) parent.addTotals(0, 0, 0, lines, linesOfCode);
+        }
+    }
+
+    /**
+     * Adds the line counts of all files, but not their changes.
+     */
+    public void addAllLines(FileStats stats) {
+        root = own(root);
+        merge(root, stats.root, true);
     }
 
     public void addAllBlames(String file, Map<String, MutableIntegerPair> stats) {
@@ -50,61 +88,345 @@ public class FileStats {
         incrementLines(file, lines, locs);
     }
 
+    /**
+     * Writes these stats in a compact binary form that can be read with {@link #readFrom(DataInput)}.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size());
+        try {
+            forEachFile((file, additions, deletions, lines, linesOfCode) -> {
+                try {
+                    out.writeUTF(file);
+                    out.writeLong(additions);
+                    out.writeLong(deletions);
+                    out.writeLong(lines);
+                    out.writeLong(linesOfCode);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static FileStats readFrom(DataInput in) throws IOException {
+        FileStats stats = new FileStats();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String file = in.readUTF();
+            stats.addChanges(file, in.readLong(), in.readLong());
+            stats.incrementLines(file, in.readLong(), in.readLong());
+        }
+        return stats;
+    }
+
+    /**
+     * Passes the stats of every file to the consumer, in no particular order, without creating any objects but the paths.
+     */
+    public void forEachFile(FileConsumer consumer) {
+        forEachNode(root, new StringBuilder(), 0, Integer.MAX_VALUE, false, consumer);
+    }
+
+    /**
+     * Passes the totals of every folder up to the given depth, where top level folders have depth 1, in no particular order.
+     */
+    public void forEachFolder(int maxDepth, FileConsumer consumer) {
+        forEachNode(root, new StringBuilder(), 0, maxDepth, true, consumer);
+    }
+
+    public int size() {
+        return root.files;
+    }
+
+    @FunctionalInterface
+    public interface FileConsumer {
+        void accept(String file, long additions, long deletions, long lines, long linesOfCode);
+    }
+
     public Changes getChanges(String file) {
-        return new Changes(perFileAdditions.getOrDefault(file, 0), perFileDeletions.getOrDefault(file, 0));
+        Node node = root;
+        int start = 0;
+        while (node != null) {
+            int end = file.indexOf('/', start);
+            String segment = file.substring(start, end < 0 ? file.length() : end);
+            node = node.children == null ? null : node.children.get(segment);
+            if (end < 0) break;
+            start = end + 1;
+        }
+        return node == null || !node.file ? new Changes(0, 0) : new Changes(node.additions, node.deletions);
     }
 
     public List<FileChanges> getAllChangesSorted() {
-        return perFileAdditions.entrySet().stream()
-                .map((entry) -> new FileChanges(entry.getKey(), entry.getValue(),
-                        perFileDeletions.getOrDefault(entry.getKey(), 0),
-                        perFileLines.getOrDefault(entry.getKey(), 0L),
-                        perFileLOC.getOrDefault(entry.getKey(), 0L)))
-                .sorted(((Comparator<FileChanges>) (a, b) -> (int) Math.round((b.getAdditions() * WEIGHT_ADDITIONS + b.getDeletions() * WEIGHT_DELETIONS)
-                        - (a.getAdditions() * WEIGHT_ADDITIONS + a.getDeletions() * WEIGHT_DELETIONS))).thenComparing(FileChanges::getFileName))
-                .collect(Collectors.toList());
+        List<FileChanges> changes = getAllChanges();
+        changes.sort(BY_WEIGHTED_CHANGES);
+        return changes;
     }
 
     public List<FileChanges> getAllChangesSortedBy(Comparator<FileChanges> comparator) {
         return getAllChangesSortedBy(comparator, (_) -> true);
     }
     public List<FileChanges> getAllChangesSortedBy(Comparator<FileChanges> comparator, Predicate<FileChanges> filter) {
-        return perFileAdditions.entrySet().stream()
-                .map((entry) -> new FileChanges(entry.getKey(), entry.getValue(),
-                        perFileDeletions.getOrDefault(entry.getKey(), 0),
-                        perFileLines.getOrDefault(entry.getKey(), 0L),
-                        perFileLOC.getOrDefault(entry.getKey(), 0L)))
-                .filter(filter)
-                .sorted(comparator.thenComparing(FileChanges::getFileName))
-                .collect(Collectors.toList());
+        List<FileChanges> changes = getAllChanges();
+        changes.removeIf(filter.negate());
+        changes.sort(comparator.thenComparing(FileChanges::getFileName));
+        return changes;
+    }
+
+    /**
+     * Selects the files with the highest score in a single pass, at most {@code limit} unless it is 0 or less.
+     * @return the files, the highest score first and by path on equal scores.
+     */
+    public List<FileChanges> getTopChanges(Ranking ranking, int limit) {
+        TopSelection<FileChanges> selection = new TopSelection<>(limit, Comparator.comparing(FileChanges::getFileName));
+        selectTop(root, new StringBuilder(), 0, ranking, selection, new long[5]);
+        return selection.toList();
+    }
+
+    /**
+     * Like {@link #getTopChanges}, followed by a row with the sum of all other ranked files if there are any.
+     */
+    public List<FileChanges> getTopChangesPlusOthers(Ranking ranking, int limit) {
+        TopSelection<FileChanges> selection = new TopSelection<>(limit, Comparator.comparing(FileChanges::getFileName));
+        // The files, additions, deletions, lines and lines of code of all ranked files
+        long[] totals = new long[5];
+        selectTop(root, new StringBuilder(), 0, ranking, selection, totals);
+        List<FileChanges> changes = selection.toList();
+        if (changes.size() < totals[0]) {
+            long additions = totals[1], deletions = totals[2], lines = totals[3], linesOfCode = totals[4];
+            for (var change : changes) {
+                additions -= change.getAdditions();
+                deletions -= change.getDeletions();
+                lines -= change.getLineCount();
+                linesOfCode -= change.getLineCountLOC();
+            }
+            changes.add(new FileChanges(OTHERS.formatted(totals[0] - changes.size()), additions, deletions, lines, linesOfCode, true));
+        }
+        return changes;
+    }
+
+    /**
+     * @return the totals of every folder up to the given depth, sorted like {@link #getAllChangesSorted()}.
+     */
+    public List<FileChanges> getFolderChangesSorted(int maxDepth) {
+        List<FileChanges> changes = new ArrayList<>();
+        forEachFolder(maxDepth, (folder, additions, deletions, lines, linesOfCode) -> changes.add(new FileChanges(folder, additions, deletions, lines, linesOfCode)));
+        changes.sort(BY_WEIGHTED_CHANGES);
+        return changes;
+    }
+
+    private List<FileChanges> getAllChanges() {
+        List<FileChanges> changes = new ArrayList<>(size());
+        forEachFile((file, additions, deletions, lines, linesOfCode) -> changes.add(new FileChanges(file, additions, deletions, lines, linesOfCode)));
+        return changes;
     }
 
     @Override
     public String toString() {
-        List<FileChanges> allChangesPlusTotal = new ArrayList<>(getAllChangesSorted());
-        int totalAdditions = 0, totalDeletions = 0;
-        long totalLines = 0, totalLOC = 0;
-        for (FileChanges change : allChangesPlusTotal) {
-            totalAdditions += change.getAdditions();
-            totalDeletions += change.getDeletions();
-            totalLines += change.getLineCount();
-            totalLOC += change.getLineCountLOC();
-        }
-        allChangesPlusTotal.add(new FileChanges("Total", totalAdditions, totalDeletions, totalLines, totalLOC));
+        List<FileChanges> allChangesPlusTotal = getAllChangesSorted();
+        allChangesPlusTotal.add(new FileChanges("Total", root.totalAdditions, root.totalDeletions, root.totalLines, root.totalLinesOfCode));
         return allChangesPlusTotal.stream().map((changes) -> "+%7d -%7d | %s".formatted(changes.getAdditions(), changes.getDeletions(), changes.getFileName())).collect(Collectors.joining("\n"));
     }
 
+    /**
+     * @return stats that have the files of the given stats, shared, in a folder named after the project.
+     */
     public static FileStats withProjectName(FileStats stats, String projectName) {
         var newStats = new FileStats();
-        for (var entry : stats.perFileAdditions.entrySet()) {
-            String newKey = "%s/%s".formatted(projectName, entry.getKey());
-            newStats.addChanges(newKey, entry.getValue(), stats.perFileDeletions.get(entry.getKey()));
-            newStats.incrementLines(newKey, getValue(stats.perFileLines.get(entry.getKey())), getValue(stats.perFileLOC.get(entry.getKey())));
-        }
+        newStats.root.children = new HashMap<>();
+        newStats.root.children.put(getSegment(projectName), stats.root);
+        newStats.root.addTotals(stats.root);
+        stats.owner = new Object();
         return newStats;
     }
 
-    private static long getValue(Long key) {
-        return key == null ? 0 : key;
+    /**
+     * @return the nodes from the root down to the file, creating the missing ones. All of them are owned by these stats.
+     */
+    private Node[] getPath(String file) {
+        int depth = 1;
+        for (int i = file.indexOf('/'); i >= 0; i = file.indexOf('/', i + 1)) depth++;
+        Node[] path = new Node[depth + 1];
+        root = own(root);
+        path[0] = root;
+        int start = 0;
+        for (int i = 1; i <= depth; i++) {
+            int end = i == depth ? file.length() : file.indexOf('/', start);
+            path[i] = getChild(path[i - 1], file.substring(start, end));
+            start = end + 1;
+        }
+        return path;
+    }
+
+    /**
+     * @return the child of an owned node, created or copied so that it is owned as well.
+     */
+    private Node getChild(Node parent, String segment) {
+        if (parent.children == null) parent.children = new HashMap<>();
+        Node child = parent.children.get(segment);
+        if (child == null) {
+            child = new Node(owner);
+            parent.children.put(getSegment(segment), child);
+        } else if (child.owner != owner) {
+            child = child.copy(owner);
+            parent.children.put(segment, child);
+        }
+        return child;
+    }
+
+    private Node own(Node node) {
+        return node.owner == owner ? node : node.copy(owner);
+    }
+
+    /**
+     * Adds the source node and everything below it to the owned target node. Subtrees the target does not have yet are
+     * shared, unless only the lines are added.
+     */
+    private void merge(Node target, Node source, boolean linesOnly) {
+        int files = 0;
+        long lines = source.lines, linesOfCode = source.linesOfCode;
+        if (!linesOnly && source.file) {
+            if (!target.file) {
+                target.file = true;
+                files = 1;
+                lines += target.lines;
+                linesOfCode += target.linesOfCode;
+            }
+            target.additions += source.additions;
+            target.deletions += source.deletions;
+        }
+        target.lines += source.lines;
+        target.linesOfCode += source.linesOfCode;
+        if (target.file) target.addTotals(files, linesOnly ? 0 : source.additions, linesOnly ? 0 : source.deletions, lines, linesOfCode);
+
+        if (source.children == null) return;
+        for (var entry : source.children.entrySet()) {
+            if (!linesOnly && (target.children == null || !target.children.containsKey(entry.getKey()))) {
+                if (target.children == null) target.children = new HashMap<>();
+                target.children.put(entry.getKey(), entry.getValue());
+                target.addTotals(entry.getValue());
+                continue;
+            }
+            Node child = getChild(target, entry.getKey());
+            Node before = new Node(null);
+            before.addTotals(child);
+            merge(child, entry.getValue(), linesOnly);
+            target.addTotals(child.files - before.files, child.totalAdditions - before.totalAdditions, child.totalDeletions - before.totalDeletions,
+                    child.totalLines - before.totalLines, child.totalLinesOfCode - before.totalLinesOfCode);
+        }
+    }
+
+    private static void forEachNode(Node node, StringBuilder path, int depth, int maxDepth, boolean folders, FileConsumer consumer) {
+        if (node.children == null || depth >= maxDepth) return;
+        for (var entry : node.children.entrySet()) {
+            int length = path.length();
+            if (depth > 0) path.append('/');
+            path.append(entry.getKey());
+            Node child = entry.getValue();
+            if (folders && child.children != null && child.files > 0) {
+                consumer.accept(path.toString(), child.totalAdditions, child.totalDeletions, child.totalLines, child.totalLinesOfCode);
+            } else if (!folders && child.file) {
+                consumer.accept(path.toString(), child.additions, child.deletions, child.lines, child.linesOfCode);
+            }
+            forEachNode(child, path, depth + 1, maxDepth, folders, consumer);
+            path.setLength(length);
+        }
+    }
+
+    private static void selectTop(Node node, StringBuilder path, int depth, Ranking ranking, TopSelection<FileChanges> selection, long[] totals) {
+        if (node.children == null) return;
+        for (var entry : node.children.entrySet()) {
+            int length = path.length();
+            if (depth > 0) path.append('/');
+            path.append(entry.getKey());
+            Node child = entry.getValue();
+            if (child.file && ranking.ranks(child.lines)) {
+                totals[0]++;
+                totals[1] += child.additions;
+                totals[2] += child.deletions;
+                totals[3] += child.lines;
+                totals[4] += child.linesOfCode;
+                double score = ranking.score(child.additions, child.deletions, child.lines, child.linesOfCode);
+                if (selection.accepts(score)) selection.add(score, new FileChanges(path.toString(), child.additions, child.deletions, child.lines, child.linesOfCode));
+            }
+            selectTop(child, path, depth + 1, ranking, selection, totals);
+            path.setLength(length);
+        }
+    }
+
+    private static String getSegment(String segment) {
+        String existing = SEGMENTS.putIfAbsent(segment, segment);
+        return existing == null ? segment : existing;
+    }
+
+    /**
+     * The orders the files can be ranked in by {@link #getTopChanges}. Ranking by lines leaves out the files without lines.
+     */
+    public enum Ranking {
+        CHANGES(false, (additions, deletions, lines, linesOfCode) -> getWeightedChanges(additions, deletions)),
+        LINES(true, (additions, deletions, lines, linesOfCode) -> lines);
+
+        private final boolean withLinesOnly;
+        private final Score score;
+
+        Ranking(boolean withLinesOnly, Score score) {
+            this.withLinesOnly = withLinesOnly;
+            this.score = score;
+        }
+
+        boolean ranks(long lines) {
+            return !withLinesOnly || lines > 0;
+        }
+
+        double score(long additions, long deletions, long lines, long linesOfCode) {
+            return score.of(additions, deletions, lines, linesOfCode);
+        }
+
+        @FunctionalInterface
+        private interface Score {
+            double of(long additions, long deletions, long lines, long linesOfCode);
+        }
+    }
+
+    /**
+     * A file or folder. A path can be both, if a file was replaced by a folder at some point.
+     */
+    private static final class Node {
+        private final Object owner;
+        private Map<String, Node> children;
+        // Whether the file has changes, only files with changes are part of the stats
+        private boolean file;
+        private long additions, deletions, lines, linesOfCode;
+        // The sums over this node and all nodes below it that are files
+        private int files;
+        private long totalAdditions, totalDeletions, totalLines, totalLinesOfCode;
+
+        private Node(Object owner) {
+            this.owner = owner;
+        }
+
+        private Node copy(Object owner) {
+            Node copy = new Node(owner);
+            copy.children = children == null ? null : new HashMap<>(children);
+            copy.file = file;
+            copy.additions = additions;
+            copy.deletions = deletions;
+            copy.lines = lines;
+            copy.linesOfCode = linesOfCode;
+            copy.addTotals(this);
+            return copy;
+        }
+
+        private void addTotals(Node node) {
+            addTotals(node.files, node.totalAdditions, node.totalDeletions, node.totalLines, node.totalLinesOfCode);
+        }
+
+        private void addTotals(int files, long additions, long deletions, long lines, long linesOfCode) {
+            this.files += files;
+            totalAdditions += additions;
+            totalDeletions += deletions;
+            totalLines += lines;
+            totalLinesOfCode += linesOfCode;
+        }
     }
 }
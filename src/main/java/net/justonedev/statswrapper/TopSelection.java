@@ -0,0 +1,117 @@
+package net.justonedev.statswrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Selects the rows with the highest scores in a single pass, with the lowest of them on top of a heap. Check
+ * {@link #accepts(double)} before creating a row. Equal scores are ordered by the tie-break, the smaller one first.
+ */
+final class TopSelection<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int limit;
+    private final Comparator<T> tieBreak;
+    private double[] scores;
+    private Object[] rows;
+    private int size = 0;
+
+    /**
+     * @param limit the maximum number of rows, or 0 or less for all of them.
+     */
+    TopSelection(int limit, Comparator<T> tieBreak) {
+        this.limit = limit <= 0 ? Integer.MAX_VALUE : limit;
+        this.tieBreak = tieBreak;
+        scores = new double[Math.min(this.limit, INITIAL_CAPACITY)];
+        rows = new Object[scores.length];
+    }
+
+    /**
+     * @return whether a row with the given score may be part of the selection.
+     */
+    boolean accepts(double score) {
+        // Rows with the same score as the lowest one may still win the tie-break
+        return size < limit || score >= scores[0];
+    }
+
+    void add(double score, T row) {
+        if (size < limit) {
+            if (size == scores.length) {
+                scores = Arrays.copyOf(scores, (int) Math.min(limit, scores.length * 2L));
+                rows = Arrays.copyOf(rows, scores.length);
+            }
+            scores[size] = score;
+            rows[size] = row;
+            siftUp(size++);
+        } else if (isLower(scores[0], get(0), score, row)) {
+            scores[0] = score;
+            rows[0] = row;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Takes all rows out of the selection, the highest score first.
+     */
+    List<T> toList() {
+        List<T> sorted = new ArrayList<>(size);
+        // Takes the lowest row off the heap until it is empty, so the list is reversed at the end
+        while (size > 0) {
+            sorted.add(get(0));
+            size--;
+            scores[0] = scores[size];
+            rows[0] = rows[size];
+            rows[size] = null;
+            siftDown(0);
+        }
+        Collections.reverse(sorted);
+        return sorted;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!isLower(index, parent)) return;
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int lowest = index, left = 2 * index + 1, right = left + 1;
+            if (left < size && isLower(left, lowest)) lowest = left;
+            if (right < size && isLower(right, lowest)) lowest = right;
+            if (lowest == index) return;
+            swap(index, lowest);
+            index = lowest;
+        }
+    }
+
+    private boolean isLower(int first, int second) {
+        return isLower(scores[first], get(first), scores[second], get(second));
+    }
+
+    private boolean isLower(double score, T row, double otherScore, T otherRow) {
+        int comparison = Double.compare(score, otherScore);
+        return comparison < 0 || (comparison == 0 && tieBreak.compare(row, otherRow) > 0);
+    }
+
+    private void swap(int first, int second) {
+        double score = scores[first];
+        scores[first] = scores[second];
+        scores[second] = score;
+        Object row = rows[first];
+        rows[first] = rows[second];
+        rows[second] = row;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int index) {
+        return (T) rows[index];
+    }
+}
@@ -5,9 +5,9 @@ import lombok.Getter;
 @Getter
 public class UserChanges extends Changes {
     private final String author;
-    private final int commits;
+    private final long commits;
 
-    public UserChanges(final String author, final int additions, final int deletions, final int commits) {
+    public UserChanges(final String author, final long additions, final long deletions, final long commits) {
         super(additions, deletions);
         this.author = author;
         this.commits = commits;
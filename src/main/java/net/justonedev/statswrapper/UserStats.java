@@ -1,43 +1,71 @@
 package net.justonedev.statswrapper;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+/**
+ * The changes and commits per author, in primitive columns indexed by the {@link AuthorIds ID} of the author.
+ */
 public class UserStats {
     static final double WEIGHT_ADDITIONS = 2.5;
     static final double WEIGHT_DELETIONS = 1.1;
+    private static final int INITIAL_CAPACITY = 16;
+    // The name of the row that sums up all authors that are not listed
+    static final String OTHERS = "Others (%d)";
 
-    private final Map<String, Integer> perUserAdditions;
-    private final Map<String, Integer> perUserDeletions;
-    private final Map<String, Integer> perUserCommits;
+    private long[] additions;
+    private long[] deletions;
+    private long[] commits;
+    // The IDs of the authors that have stats, even if all of them are 0
+    private final BitSet authors;
 
     public UserStats() {
-        perUserAdditions = new HashMap<>();
-        perUserDeletions = new HashMap<>();
-        perUserCommits = new HashMap<>();
+        additions = new long[INITIAL_CAPACITY];
+        deletions = new long[INITIAL_CAPACITY];
+        commits = new long[INITIAL_CAPACITY];
+        authors = new BitSet();
     }
 
-    public void addChanges(String author, int additions, int deletions) {
-        perUserAdditions.put(author, perUserAdditions.getOrDefault(author, 0) + additions);
-        perUserDeletions.put(author, perUserDeletions.getOrDefault(author, 0) + deletions);
+    public void addChanges(String author, long additions, long deletions) {
+        addChanges(AuthorIds.of(author), additions, deletions);
+    }
+
+    public void addChanges(int authorId, long additions, long deletions) {
+        ensureCapacity(authorId);
+        authors.set(authorId);
+        this.additions[authorId] += additions;
+        this.deletions[authorId] += deletions;
     }
 
     public void addCommit(String author) {
-        perUserCommits.put(author, perUserCommits.getOrDefault(author, 0) + 1);
+        addCommits(AuthorIds.of(author), 1);
     }
 
-    public void addCommits(String author, int commits) {
-        perUserCommits.put(author, perUserCommits.getOrDefault(author, 0) + commits);
+    public void addCommits(String author, long commits) {
+        addCommits(AuthorIds.of(author), commits);
+    }
+
+    public void addCommits(int authorId, long commits) {
+        ensureCapacity(authorId);
+        authors.set(authorId);
+        this.commits[authorId] += commits;
     }
 
     public void addAllChanges(UserStats stats) {
-        for (var entry : stats.perUserAdditions.entrySet()) {
-            addChanges(entry.getKey(), entry.getValue(), stats.perUserDeletions.get(entry.getKey()));
-            addCommits(entry.getKey(), stats.perUserCommits.getOrDefault(entry.getKey(), 0));
+        ensureCapacity(stats.authors.length() - 1);
+        authors.or(stats.authors);
+        for (int id = stats.authors.nextSetBit(0); id >= 0; id = stats.authors.nextSetBit(id + 1)) {
+            additions[id] += stats.additions[id];
+            deletions[id] += stats.deletions[id];
+            commits[id] += stats.commits[id];
         }
     }
 
@@ -53,35 +81,152 @@ public class UserStats {
         }
     }
 
-    public Changes getChanges(String file) {
-        return new Changes(perUserAdditions.getOrDefault(file, 0), perUserDeletions.getOrDefault(file, 0));
+    private void ensureCapacity(int authorId) {
+        if (authorId < additions.length) return;
+        int capacity = Math.max(additions.length * 2, authorId + 1);
+        additions = Arrays.copyOf(additions, capacity);
+        deletions = Arrays.copyOf(deletions, capacity);
+        commits = Arrays.copyOf(commits, capacity);
+    }
+
+    /**
+     * Writes these stats in a compact binary form that can be read with {@link #readFrom(DataInput)}.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size());
+        for (int id = authors.nextSetBit(0); id >= 0; id = authors.nextSetBit(id + 1)) {
+            out.writeUTF(AuthorIds.name(id));
+            out.writeLong(additions[id]);
+            out.writeLong(deletions[id]);
+            out.writeLong(commits[id]);
+        }
+    }
+
+    public static UserStats readFrom(DataInput in) throws IOException {
+        UserStats stats = new UserStats();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int id = AuthorIds.of(in.readUTF());
+            stats.addChanges(id, in.readLong(), in.readLong());
+            stats.addCommits(id, in.readLong());
+        }
+        return stats;
+    }
+
+    /**
+     * Passes the stats of every author to the consumer, in no particular order, without creating any objects.
+     */
+    public void forEachUser(UserConsumer consumer) {
+        for (int id = authors.nextSetBit(0); id >= 0; id = authors.nextSetBit(id + 1)) {
+            consumer.accept(AuthorIds.name(id), additions[id], deletions[id], commits[id]);
+        }
+    }
+
+    public int size() {
+        return authors.cardinality();
+    }
+
+    @FunctionalInterface
+    public interface UserConsumer {
+        void accept(String author, long additions, long deletions, long commits);
+    }
+
+    public Changes getChanges(String author) {
+        int id = AuthorIds.of(author);
+        if (!authors.get(id)) return new Changes(0, 0);
+        return new Changes(additions[id], deletions[id]);
     }
 
     public List<UserChanges> getAllChangesSorted() {
-        return perUserAdditions.entrySet().stream()
-                .map((entry) -> new UserChanges(entry.getKey(), entry.getValue(), perUserDeletions.getOrDefault(entry.getKey(), 0), perUserCommits.getOrDefault(entry.getKey(), 0)))
-                .sorted(((Comparator<UserChanges>) (a, b) -> (int) Math.round((b.getAdditions() * WEIGHT_ADDITIONS + b.getDeletions() * WEIGHT_DELETIONS)
-                        - (a.getAdditions() * WEIGHT_ADDITIONS + a.getDeletions() * WEIGHT_DELETIONS))).thenComparing(UserChanges::getAuthor))
-                .collect(Collectors.toList());
+        return getAllChangesSortedBy(Comparator.comparingDouble((UserChanges change) -> getWeightedChanges(change.getAdditions(), change.getDeletions())).reversed());
     }
 
     public List<UserChanges> getAllChangesSortedBy(Comparator<UserChanges> comparator) {
-        return perUserAdditions.entrySet().stream()
-                .map((entry) -> new UserChanges(entry.getKey(), entry.getValue(), perUserDeletions.getOrDefault(entry.getKey(), 0), perUserCommits.getOrDefault(entry.getKey(), 0)))
-                .sorted(comparator.thenComparing(UserChanges::getAuthor))
-                .collect(Collectors.toList());
+        List<UserChanges> changes = getAllChanges();
+        changes.sort(comparator.thenComparing(UserChanges::getAuthor));
+        return changes;
     }
 
     public List<UserChanges> getAllChangesSortedByCommit() {
-        return perUserAdditions.entrySet().stream()
-                .map((entry) -> new UserChanges(entry.getKey(), entry.getValue(), perUserDeletions.getOrDefault(entry.getKey(), 0), perUserCommits.getOrDefault(entry.getKey(), 0)))
-                .sorted(Comparator.comparing(UserChanges::getCommits).reversed())
-                .collect(Collectors.toList());
+        return getAllChangesSortedBy(Comparator.comparingLong(UserChanges::getCommits).reversed());
+    }
+
+    /**
+     * Selects the authors with the highest score in a single pass, at most {@code limit} unless it is 0 or less.
+     * @return the authors, the highest score first and by name on equal scores.
+     */
+    public List<UserChanges> getTopChanges(Ranking ranking, int limit) {
+        TopSelection<UserChanges> selection = new TopSelection<>(limit, Comparator.comparing(UserChanges::getAuthor));
+        for (int id = authors.nextSetBit(0); id >= 0; id = authors.nextSetBit(id + 1)) {
+            double score = ranking.score(additions[id], deletions[id], commits[id]);
+            if (selection.accepts(score)) selection.add(score, new UserChanges(AuthorIds.name(id), additions[id], deletions[id], commits[id]));
+        }
+        return selection.toList();
+    }
+
+    /**
+     * Like {@link #getTopChanges}, followed by a row with the sum of all other authors if there are any, and the total.
+     */
+    public List<UserChanges> getTopChangesPlusTotal(Ranking ranking, int limit) {
+        List<UserChanges> changes = getTopChanges(ranking, limit);
+        if (changes.size() < size()) {
+            long otherAdditions = 0, otherDeletions = 0, otherCommits = 0;
+            for (int id = authors.nextSetBit(0); id >= 0; id = authors.nextSetBit(id + 1)) {
+                otherAdditions += additions[id];
+                otherDeletions += deletions[id];
+                otherCommits += commits[id];
+            }
+            for (var change : changes) {
+                otherAdditions -= change.getAdditions();
+                otherDeletions -= change.getDeletions();
+                otherCommits -= change.getCommits();
+            }
+            changes.add(new UserChanges(OTHERS.formatted(size() - changes.size()), otherAdditions, otherDeletions, otherCommits));
+        }
+        return allChangesPlusTotal(changes);
+    }
+
+    /**
+     * Weighs additions higher than deletions. Computed as a double, so that it cannot overflow.
+     */
+    static double getWeightedChanges(long additions, long deletions) {
+        return additions * WEIGHT_ADDITIONS + deletions * WEIGHT_DELETIONS;
+    }
+
+    /**
+     * The orders the authors can be ranked in by {@link #getTopChanges}.
+     */
+    public enum Ranking {
+        CHANGES((additions, deletions, commits) -> getWeightedChanges(additions, deletions)),
+        ADDITIONS((additions, deletions, commits) -> additions),
+        DELETIONS((additions, deletions, commits) -> deletions),
+        COMMITS((additions, deletions, commits) -> commits);
+
+        private final Score score;
+
+        Ranking(Score score) {
+            this.score = score;
+        }
+
+        double score(long additions, long deletions, long commits) {
+            return score.of(additions, deletions, commits);
+        }
+
+        @FunctionalInterface
+        private interface Score {
+            double of(long additions, long deletions, long commits);
+        }
+    }
+
+    private List<UserChanges> getAllChanges() {
+        List<UserChanges> changes = new ArrayList<>(size());
+        forEachUser((author, additions, deletions, commits) -> changes.add(new UserChanges(author, additions, deletions, commits)));
+        return changes;
     }
 
     public static List<UserChanges> allChangesPlusTotal(List<UserChanges> sorted) {
         List<UserChanges> changes = new ArrayList<>(sorted);
-        int totalAdditions = 0, totalDeletions = 0, totalCommits = 0;
+        long totalAdditions = 0, totalDeletions = 0, totalCommits = 0;
         for (var change : changes) {
             totalAdditions += change.getAdditions();
             totalDeletions += change.getDeletions();
@@ -0,0 +1,82 @@
+package net.justonedev;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class AuthorAliasesTest {
+
+    @TempDir
+    File repository;
+
+    private record Case(String description, List<String> mailmap, List<String> shared, String identity, String expected) {
+    }
+
+    private static final List<Case> CASES = List.of(
+            // Proper Name <commit@email>
+            new Case("name by email", List.of("Proper Name <commit@example.com>"), List.of(), "Commit Name <commit@example.com>", "Proper Name"),
+            new Case("name by email, other email", List.of("Proper Name <commit@example.com>"), List.of(), "Commit Name <other@example.com>", "Commit Name"),
+            // <proper@email> <commit@email>
+            new Case("email only", List.of("<proper@example.com> <commit@example.com>"), List.of(), "Commit Name <commit@example.com>", "Commit Name"),
+            // Proper Name <proper@email> <commit@email>
+            new Case("name and email by email", List.of("Proper Name <proper@example.com> <commit@example.com>"), List.of(), "Commit Name <commit@example.com>", "Proper Name"),
+            new Case("name and email by email, proper email", List.of("Proper Name <proper@example.com> <commit@example.com>"), List.of(), "Commit Name <proper@example.com>", "Commit Name"),
+            // Proper Name <proper@email> Commit Name <commit@email>
+            new Case("by name and email", List.of("Proper Name <proper@example.com> Commit Name <commit@example.com>"), List.of(), "Commit Name <commit@example.com>", "Proper Name"),
+            new Case("by name and email, other name", List.of("Proper Name <proper@example.com> Commit Name <commit@example.com>"), List.of(), "Someone Else <commit@example.com>", "Someone Else"),
+            new Case("by name and email, without email", List.of("Proper Name <proper@example.com> Commit Name <commit@example.com>"), List.of(), "Commit Name", "Proper Name"),
+            new Case("by name, ignoring case", List.of("Proper Name <proper@example.com> Commit Name <commit@example.com>"), List.of(), "commit name <commit@example.com>", "Proper Name"),
+            new Case("name for any email, the specific one wins", List.of(
+                    "Any Name <commit@example.com>",
+                    "Proper Name <proper@example.com> Commit Name <commit@example.com>"), List.of(), "Commit Name <commit@example.com>", "Proper Name"),
+            new Case("comments and blank lines", List.of("# Proper Name <commit@example.com>", "", "Broken <commit@example.com"), List.of(), "Commit Name <commit@example.com>", "Commit Name"),
+            // Emails ignore case
+            new Case("email ignoring case", List.of("Proper Name <Commit@Example.com>"), List.of(), "Commit Name <COMMIT@example.COM>", "Proper Name"),
+            new Case("email ignoring case in the shared file", List.of(), List.of("Proper Name <commit@EXAMPLE.com>"), "Commit Name <Commit@example.com>", "Proper Name"),
+            // The .mailmap, then the shared alias file, then Config.ALIASES
+            new Case("shared file after .mailmap", List.of("Middle Name <commit@example.com> Commit Name <commit@example.com>"),
+                    List.of("Final Name <commit@example.com> Middle Name <commit@example.com>"), "Commit Name <commit@example.com>", "Final Name"),
+            new Case(".mailmap before shared file", List.of("Final Name <commit@example.com> Middle Name <commit@example.com>"),
+                    List.of("Middle Name <commit@example.com> Commit Name <commit@example.com>"), "Commit Name <commit@example.com>", "Middle Name"),
+            new Case("shared file overrides .mailmap", List.of("Mailmap Name <commit@example.com>"), List.of("Shared Name <commit@example.com>"),
+                    "Commit Name <commit@example.com>", "Shared Name"),
+            new Case("Config.ALIASES after .mailmap", List.of("Just1Developer <commit@example.com>"), List.of(), "Commit Name <commit@example.com>", "JustOneDeveloper"),
+            new Case("Config.ALIASES after shared file", List.of(), List.of("Just1Developer <commit@example.com>"), "Commit Name <commit@example.com>", "JustOneDeveloper"),
+            new Case("Config.ALIASES last", List.of("Mailmap Name <commit@example.com> JustOneDeveloper <commit@example.com>"),
+                    List.of("Shared Name <commit@example.com> JustOneDeveloper <commit@example.com>"), "Just1Developer <commit@example.com>", "JustOneDeveloper"),
+            new Case("Config.ALIASES without mailmaps", List.of(), List.of(), "Just1Developer <commit@example.com>", "JustOneDeveloper")
+    );
+
+    @Test
+    void resolvesIdentities() {
+        for (Case c : CASES) {
+            AuthorAliases aliases = new AuthorAliases(c.mailmap(), c.shared());
+            assertEquals(c.expected(), aliases.getName(c.identity()), c.description());
+            // Memoized
+            assertEquals(c.expected(), aliases.getName(c.identity()), c.description());
+        }
+    }
+
+    @Test
+    void readsTheMailmapOfTheRepository() throws Exception {
+        Files.writeString(new File(repository, ".mailmap").toPath(), "Proper Name <mailmap-test@example.com>\n");
+        AuthorAliases aliases = AuthorAliases.forRepository(repository.getPath());
+        assertEquals("Proper Name", aliases.getName("Commit Name <mailmap-test@example.com>"));
+        assertEquals("Commit Name", aliases.getName("Commit Name <other@example.com>"));
+    }
+
+    @Test
+    void describesEverythingAuthorsAreResolvedWith() {
+        List<String> mailmap = List.of("Proper Name <commit@example.com>");
+        String description = new AuthorAliases(mailmap, List.of()).toString();
+        assertEquals(description, new AuthorAliases(List.of("# A comment", " Proper Name <commit@example.com> ", ""), List.of()).toString());
+        assertNotEquals(description, new AuthorAliases(List.of(), mailmap).toString());
+        assertNotEquals(description, new AuthorAliases(mailmap, List.of("Other Name <other@example.com>")).toString());
+    }
+}
@@ -0,0 +1,78 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.FileStats;
+import net.justonedev.statswrapper.MutableIntegerPair;
+import net.justonedev.statswrapper.UserStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BlameTotalsTest {
+
+    private static final int RUNS = 50;
+
+    @Test
+    void parallelSumEqualsSequentialSum() {
+        List<StatsGetter.StringMapWrapper> blames = blames(5_000, 40);
+        UserStats userStats = new UserStats(), userStatsComments = new UserStats();
+        FileStats fileStats = history(blames);
+        for (var blame : blames) {
+            userStats.addAllBlames(blame.blame());
+            userStatsComments.addAllBlames(blame.commentBlame());
+            fileStats.addAllBlames(blame.file(), blame.blame());
+        }
+
+        for (int run = 0; run < RUNS; run++) {
+            StatsGetter.BlameTotals totals = StatsGetter.BlameTotals.sum(blames);
+            assertEquals(toMap(userStats), toMap(totals.userStats), "line blame of run " + run);
+            assertEquals(toMap(userStatsComments), toMap(totals.userStatsComments), "comment blame of run " + run);
+            // Only files with changes are listed, so the lines are added to the same history as in a real run
+            FileStats files = history(blames);
+            files.addAllLines(totals.fileStats);
+            assertEquals(toMap(fileStats), toMap(files), "file lines of run " + run);
+        }
+    }
+
+    private static List<StatsGetter.StringMapWrapper> blames(int files, int authors) {
+        Random random = new Random(42);
+        List<StatsGetter.StringMapWrapper> blames = new ArrayList<>(files);
+        for (int file = 0; file < files; file++) {
+            Map<String, MutableIntegerPair> blame = new HashMap<>(), commentBlame = new HashMap<>();
+            for (int i = 1 + random.nextInt(5); i > 0; i--) {
+                String author = "Author " + random.nextInt(authors);
+                int lines = random.nextInt(1000), comments = random.nextInt(lines + 1);
+                blame.put(author, new MutableIntegerPair(lines, lines - comments));
+                commentBlame.put(author, new MutableIntegerPair(comments, random.nextInt(comments + 1)));
+            }
+            String path = "src/module%d/package%d/File%d.java".formatted(file % 17, file % 5, file);
+            blames.add(new StatsGetter.StringMapWrapper(path, blame, commentBlame));
+        }
+        return blames;
+    }
+
+    private static FileStats history(List<StatsGetter.StringMapWrapper> blames) {
+        FileStats history = new FileStats();
+        for (var blame : blames) history.addChanges(blame.file(), blame.file().length(), 1);
+        return history;
+    }
+
+    private static Map<String, List<Long>> toMap(UserStats stats) {
+        Map<String, List<Long>> map = new TreeMap<>();
+        stats.forEachUser((author, additions, deletions, commits) -> map.put(author, List.of(additions, deletions, commits)));
+        return map;
+    }
+
+    private static Map<String, List<Long>> toMap(FileStats stats) {
+        Map<String, List<Long>> map = new TreeMap<>();
+        stats.forEachFile((file, additions, deletions, lines, linesOfCode) -> map.put(file, List.of(additions, deletions, lines, linesOfCode)));
+        stats.forEachFolder(Integer.MAX_VALUE, (folder, additions, deletions, lines, linesOfCode) -> map.put(folder + "/", List.of(additions, deletions, lines, linesOfCode)));
+        return map;
+    }
+}
@@ -0,0 +1,99 @@
+package net.justonedev;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommitIdSetTest {
+
+    private final Random random = new Random(11);
+
+    @Test
+    void behavesLikeAHashSet() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) ids.add(randomId(40));
+        // IDs that share the bits the slot is chosen by, so they collide, and some only differ in the middle part
+        String prefix = randomId(16), suffix = randomId(8);
+        for (int i = 0; i < 500; i++) ids.add(prefix + randomId(24));
+        for (int i = 0; i < 500; i++) ids.add(prefix + randomId(16) + suffix);
+        // An all-zero ID and IDs with all-zero parts, which must not look like empty slots
+        ids.add("0".repeat(40));
+        ids.add(randomId(32) + "0".repeat(8));
+        ids.add("0".repeat(32) + randomId(8));
+        // IDs that are kept as Strings: SHA-256, abbreviated and not hexadecimal
+        for (int i = 0; i < 200; i++) ids.add(randomId(64));
+        ids.add("abc1234");
+        ids.add("g".repeat(40));
+        ids.add("");
+
+        CommitIdSet set = new CommitIdSet();
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 3 * ids.size(); i++) {
+            // Every ID is likely to be added more than once
+            String id = ids.get(random.nextInt(ids.size()));
+            assertEquals(expected.contains(id), set.contains(id), id);
+            assertEquals(expected.add(id), set.add(id), id);
+            assertEquals(expected.size(), set.size());
+        }
+        for (String id : ids) assertEquals(expected.contains(id), set.contains(id), id);
+        assertEquals(expected, toSet(set));
+    }
+
+    @Test
+    void acceptsAnyCharSequence() {
+        String id = randomId(40);
+        CommitIdSet set = new CommitIdSet(1);
+        assertTrue(set.add(new StringBuilder(id)));
+        assertFalse(set.add(id));
+        assertTrue(set.contains(new StringBuilder(id)));
+        assertEquals(Set.of(id), toSet(set));
+    }
+
+    @Test
+    void growsFromTheExpectedSize() {
+        CommitIdSet set = new CommitIdSet(10);
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 5_000; i++) {
+            String id = randomId(40);
+            expected.add(id);
+            set.add(id);
+        }
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected, toSet(set));
+    }
+
+    @Test
+    void clearRemovesAllIds() {
+        CommitIdSet set = new CommitIdSet();
+        String id = randomId(40), other = randomId(64);
+        set.add(id);
+        set.add(other);
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(id));
+        assertFalse(set.contains(other));
+        assertTrue(set.add(id));
+        assertEquals(1, set.size());
+    }
+
+    private String randomId(int length) {
+        byte[] bytes = new byte[(length + 1) / 2];
+        random.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes).substring(0, length);
+    }
+
+    private static Set<String> toSet(CommitIdSet set) {
+        Set<String> ids = new HashSet<>();
+        set.forEach((id) -> assertTrue(ids.add(id), "reported twice: " + id));
+        return ids;
+    }
+}
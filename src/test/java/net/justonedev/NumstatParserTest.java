@@ -0,0 +1,138 @@
+package net.justonedev;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class NumstatParserTest {
+
+    // Recorded from git log --all --full-history --sparse -z --numstat with LOG_FORMAT: an empty commit, a merge, a
+    // rename with changes, a non-ASCII path and author, a binary file and the root commit
+    private static final String LOG = ""
+            + "commit 77a68b483ff73ed75965ca7ad40f1f1a28141091 03858793ad72a7c54217f7f11d54c9884c45a04a\tBob <bob@example.com>\0"
+            + "commit 03858793ad72a7c54217f7f11d54c9884c45a04a 605558e94da06fba3c5e85aea2de51eb3f2d8257 52efcf82fcd49fd842f4b6599e5acfbef939952d\tT <t@x>\0"
+            + "commit 52efcf82fcd49fd842f4b6599e5acfbef939952d 11563f2af885b960c9f35da80047c87a87e6ba79\tBob <bob@example.com>\n"
+            + "1\t0\tside.txt\0\0"
+            + "commit 605558e94da06fba3c5e85aea2de51eb3f2d8257 11563f2af885b960c9f35da80047c87a87e6ba79\tAlice <alice@example.com>\n"
+            + "1\t0\tApp.java\0\0"
+            + "commit 11563f2af885b960c9f35da80047c87a87e6ba79 ebd2f7cfe33296bf957054276dbfd3ae2da4132d\tJürgen Müller <jm@example.com>\n"
+            + "1\t1\t\0Main.java\0App.java\0"
+            + "1\t0\tGröße.java\0"
+            + "-\t-\tlogo.png\0\0"
+            + "commit ebd2f7cfe33296bf957054276dbfd3ae2da4132d \tAlice <alice@example.com>\n"
+            + "8\t0\tMain.java\0"
+            + "-\t-\tlogo.png\0";
+
+    private static final List<String> EXPECTED = List.of(
+            "commit 77a68b483ff73ed75965ca7ad40f1f1a28141091 Bob <bob@example.com>",
+            "merge 03858793ad72a7c54217f7f11d54c9884c45a04a T <t@x>",
+            "commit 52efcf82fcd49fd842f4b6599e5acfbef939952d Bob <bob@example.com>",
+            "side.txt +1 -0",
+            "commit 605558e94da06fba3c5e85aea2de51eb3f2d8257 Alice <alice@example.com>",
+            "App.java +1 -0",
+            "commit 11563f2af885b960c9f35da80047c87a87e6ba79 Jürgen Müller <jm@example.com>",
+            "App.java +1 -1",
+            "Größe.java +1 -0",
+            "logo.png +0 -0",
+            "commit ebd2f7cfe33296bf957054276dbfd3ae2da4132d Alice <alice@example.com>",
+            "Main.java +8 -0",
+            "logo.png +0 -0");
+
+    @Test
+    void parsesRecordedLog() throws IOException {
+        Recorder recorder = new Recorder();
+        new NumstatParser(recorder).parse(stream(LOG));
+        assertEquals(EXPECTED, recorder.events);
+    }
+
+    @Test
+    void parsesLogReadOneByteAtATime() throws IOException {
+        Recorder recorder = new Recorder();
+        new NumstatParser(recorder).parse(new OneByteInputStream(stream(LOG)));
+        assertEquals(EXPECTED, recorder.events);
+    }
+
+    @Test
+    void parsesPathsLongerThanTheBuffer() throws IOException {
+        String path = "src/" + "a".repeat(200_000) + ".java";
+        Recorder recorder = new Recorder();
+        new NumstatParser(recorder).parse(stream("commit 1234 \tAlice <alice@example.com>\n12\t3\t%s\0".formatted(path)));
+        assertEquals(List.of("commit 1234 Alice <alice@example.com>", path + " +12 -3"), recorder.events);
+    }
+
+    @Test
+    void internsPathsAndAuthorsAcrossCalls() throws IOException {
+        StringBuilder log = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        // Enough paths to grow the tables
+        for (int i = 0; i < 1000; i++) {
+            log.append("commit %d \tAuthor %d <a@x>\n%d\t%d\tsrc/File%d.java\0\0".formatted(i, i % 7, i, i * 2, i));
+            expected.add("commit %d Author %d <a@x>".formatted(i, i % 7));
+            expected.add("src/File%d.java +%d -%d".formatted(i, i, i * 2));
+        }
+        Recorder first = new Recorder(), second = new Recorder();
+        NumstatParser parser = new NumstatParser(first);
+        parser.parse(stream(log.toString()));
+        assertEquals(expected, first.events);
+
+        parser = new NumstatParser(second);
+        parser.parse(stream(log.toString()));
+        parser.parse(stream(log.toString()));
+        assertEquals(2 * expected.size(), second.events.size());
+        for (int i = 0; i < second.paths.size() / 2; i++) {
+            assertSame(second.paths.get(i), second.paths.get(i + second.paths.size() / 2));
+            assertSame(second.authors.get(i), second.authors.get(i + second.authors.size() / 2));
+        }
+    }
+
+    private static InputStream stream(String log) {
+        return new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Recorder implements NumstatParser.Listener {
+        private final List<String> events = new ArrayList<>();
+        private final List<String> paths = new ArrayList<>();
+        private final List<String> authors = new ArrayList<>();
+
+        @Override
+        public void onCommit(CharSequence commit, boolean merge, String author) {
+            events.add((merge ? "merge " : "commit ") + commit + " " + author);
+            authors.add(author);
+        }
+
+        @Override
+        public void onChange(String file, int additions, int deletions) {
+            events.add("%s +%d -%d".formatted(file, additions, deletions));
+            paths.add(file);
+        }
+    }
+
+    /**
+     * Returns at most one byte per read, so that every token crosses the end of the buffer.
+     */
+    private static final class OneByteInputStream extends InputStream {
+        private final InputStream in;
+
+        private OneByteInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return in.read(bytes, offset, Math.min(length, 1));
+        }
+    }
+}
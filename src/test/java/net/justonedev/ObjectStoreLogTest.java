@@ -0,0 +1,217 @@
+package net.justonedev;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObjectStoreLogTest {
+
+    @TempDir
+    File repository;
+
+    private final Random random = new Random(7);
+    private int commits = 0;
+
+    @Test
+    void readsTheSameHistoryAsGit() throws Exception {
+        generate();
+        Map<String, List<String>> git = readWithGit();
+        assertTrue(git.size() > 10, "generated history");
+        assertEquals(git, readWithObjectStore(), "loose objects");
+
+        // Packed objects are stored as deltas
+        git("gc", "-q", "--aggressive");
+        assertEquals(git, readWithObjectStore(), "packed objects");
+    }
+
+    @Test
+    void stopsWhenInterrupted() throws Exception {
+        generate();
+        File gitDirectory = new File(repository, ".git");
+        List<String> tips = GitCommands.runCommand(repository.getPath(), "git rev-parse --all").stream().filter((line) -> !line.isEmpty()).toList();
+        try (ObjectStore store = ObjectStore.open(gitDirectory)) {
+            ObjectStoreLog log = new ObjectStoreLog(store, gitDirectory, PathFilter.load(repository.getPath(), List.of()));
+            // Set by RepositoryRunner when the repository times out
+            Thread.currentThread().interrupt();
+            assertThrows(InterruptedIOException.class, () -> log.log(tips, List.of(), new Recorder(new TreeMap<>())));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Creates a history with exact and inexact renames, binary files, deletions, excluded files and merges.
+     */
+    private void generate() throws Exception {
+        git("init", "-q", "-b", "main");
+        write("Main.java", lines(40));
+        write("util/Helper.java", lines(60));
+        write("util/Empty.java", "");
+        write("logo.png", binary(3000));
+        write("script.py", lines(10));
+        commit("Alice");
+
+        move("Main.java", "app/Main.java");
+        commit("Bob");
+
+        move("util/Helper.java", "util/Helpers.java");
+        write("util/Helpers.java", change(read("util/Helpers.java")));
+        commit("Alice");
+
+        git("checkout", "-q", "-b", "feature");
+        write("logo.png", binary(3500));
+        write("feature/Feature.java", lines(30));
+        commit("Carol");
+        move("logo.png", "assets/logo.png");
+        commit("Carol");
+
+        git("checkout", "-q", "main");
+        write("app/Main.java", change(read("app/Main.java")));
+        write("script.py", lines(12));
+        commit("Bob");
+        git("merge", "-q", "--no-ff", "--no-commit", "feature");
+        commit("Alice");
+
+        for (int i = 0; i < 10; i++) {
+            write("app/Main.java", change(read("app/Main.java")));
+            if (i % 3 == 0) write("util/Helpers.java", change(read("util/Helpers.java")));
+            commit(i % 2 == 0 ? "Bob" : "Carol");
+        }
+        Files.delete(new File(repository, "util/Empty.java").toPath());
+        move("feature/Feature.java", "app/Feature.java");
+        write("app/Feature.java", change(read("app/Feature.java")));
+        commit("Carol");
+    }
+
+    private Map<String, List<String>> readWithGit() throws IOException {
+        Map<String, List<String>> history = new TreeMap<>();
+        PathFilter filter = PathFilter.load(repository.getPath(), List.of());
+        String command = "git log --all --full-history --sparse -z --numstat --pretty=format:\"%s\" %s".formatted(NumstatParser.LOG_FORMAT, filter.toPathspecs());
+        var result = GitCommands.runCommandStreaming(repository.getPath(), command, new NumstatParser(new Recorder(history))::parse);
+        assertTrue(result.isSuccess(), "git log failed: " + result.errors());
+        return history;
+    }
+
+    private Map<String, List<String>> readWithObjectStore() throws IOException {
+        Map<String, List<String>> history = new TreeMap<>();
+        File gitDirectory = new File(repository, ".git");
+        List<String> tips = GitCommands.runCommand(repository.getPath(), "git rev-parse --all").stream().filter((line) -> !line.isEmpty()).toList();
+        try (ObjectStore store = ObjectStore.open(gitDirectory)) {
+            new ObjectStoreLog(store, gitDirectory, PathFilter.load(repository.getPath(), List.of())).log(tips, List.of(), new Recorder(history));
+        }
+        return history;
+    }
+
+    /**
+     * Records the changes of every commit, sorted, as the backends may report them in another order.
+     */
+    private static final class Recorder implements NumstatParser.Listener {
+        private final Map<String, List<String>> history;
+        private List<String> changes = null;
+
+        private Recorder(Map<String, List<String>> history) {
+            this.history = history;
+        }
+
+        @Override
+        public void onCommit(CharSequence commit, boolean merge, String author) {
+            changes = new ArrayList<>(List.of((merge ? "merge " : "commit ") + author));
+            history.put(commit.toString(), changes);
+        }
+
+        @Override
+        public void onChange(String file, int additions, int deletions) {
+            changes.add("%s +%d -%d".formatted(file, additions, deletions));
+            changes.subList(1, changes.size()).sort(null);
+        }
+    }
+
+    private void commit(String author) throws Exception {
+        git("add", "-A");
+        git("commit", "-q", "--allow-empty", "-m", "Change " + commits, "--author", author + " <" + author.toLowerCase() + "@example.com>");
+        commits++;
+    }
+
+    private void git(String... arguments) throws Exception {
+        List<String> command = new ArrayList<>(List.of("git", "-c", "user.name=Tester", "-c", "user.email=tester@example.com", "-c", "gc.auto=0"));
+        command.addAll(List.of(arguments));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(repository).redirectErrorStream(true);
+        // A fixed date for every commit keeps the history the same between runs
+        String date = "%d +0000".formatted(1_600_000_000L + commits * 600L);
+        builder.environment().put("GIT_AUTHOR_DATE", date);
+        builder.environment().put("GIT_COMMITTER_DATE", date);
+        Process process = builder.start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, process.waitFor(), String.join(" ", command) + " failed: " + output);
+    }
+
+    private void move(String from, String to) throws Exception {
+        Files.createDirectories(new File(repository, to).getParentFile().toPath());
+        git("mv", from, to);
+    }
+
+    private void write(String path, String content) throws IOException {
+        write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void write(String path, byte[] content) throws IOException {
+        File file = new File(repository, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content);
+    }
+
+    private String read(String path) throws IOException {
+        return Files.readString(new File(repository, path).toPath());
+    }
+
+    private String lines(int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) lines.append(line()).append('\n');
+        return lines.toString();
+    }
+
+    private String line() {
+        return switch (random.nextInt(4)) {
+            case 0 -> "";
+            case 1 -> "    // Handles case %d".formatted(random.nextInt(1000));
+            default -> "    int value%d = %d;".formatted(random.nextInt(1000), random.nextInt(1000));
+        };
+    }
+
+    /**
+     * Replaces, adds and removes a few lines.
+     */
+    private String change(String content) {
+        List<String> lines = new ArrayList<>(content.lines().toList());
+        for (int i = 0; i < 3; i++) {
+            int index = random.nextInt(lines.size());
+            switch (random.nextInt(3)) {
+                case 0 -> lines.set(index, line());
+                case 1 -> lines.add(index, line());
+                default -> lines.remove(index);
+            }
+        }
+        return String.join("\n", lines) + "\n";
+    }
+
+    private byte[] binary(int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        data[0] = 0;
+        return data;
+    }
+}
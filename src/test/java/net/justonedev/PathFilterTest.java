@@ -0,0 +1,60 @@
+package net.justonedev;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PathFilterTest {
+
+    @TempDir
+    File repository;
+
+    @Test
+    void hostileRulesDoNotRunCommands() throws Exception {
+        git("init", "-q", "-b", "main");
+        Files.writeString(new File(repository, Config.PATH_FILTER_FILE).toPath(), String.join("\n",
+                "docs/",
+                "$(touch dollar)",
+                "`touch backtick`",
+                "\"; touch quote; \"",
+                "x\\$(touch backslash)",
+                "%PATH%",
+                "generated/$(touch generated).java",
+                ""));
+        Files.writeString(new File(repository, "Main.java").toPath(), "class Main {\n}\n");
+        git("add", "-A");
+        git("commit", "-q", "-m", "Initial");
+
+        PathFilter filter = PathFilter.load(repository.getPath(), List.of());
+        String command = "git log --numstat --pretty=format:%%H %s".formatted(filter.toPathspecs());
+        var result = GitCommands.runCommand(repository.getPath(), command, (line) -> { });
+        assertTrue(result.isSuccess(), "git log failed: " + result.errors());
+        for (String name : List.of("dollar", "backtick", "quote", "backslash", "generated")) {
+            assertFalse(new File(repository, name).exists(), name);
+        }
+
+        // The rules that were left out of the pathspecs still exclude their files
+        assertTrue(filter.toPathspecs().endsWith(" \":(exclude,glob)**/docs/**\""), filter.toPathspecs());
+        assertFalse(filter.toPathspecs().contains("touch"), filter.toPathspecs());
+        assertTrue(filter.isExcluded("generated/$(touch generated).java"));
+        assertTrue(filter.isExcluded("src/$(touch dollar)"));
+        assertFalse(filter.isExcluded("Main.java"));
+    }
+
+    private void git(String... arguments) throws Exception {
+        List<String> command = new ArrayList<>(List.of("git", "-c", "user.name=Tester", "-c", "user.email=tester@example.com"));
+        command.addAll(List.of(arguments));
+        Process process = new ProcessBuilder(command).directory(repository).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, process.waitFor(), String.join(" ", command) + " failed: " + output);
+    }
+}
@@ -0,0 +1,178 @@
+package net.justonedev;
+
+import net.justonedev.statswrapper.FileStats;
+import net.justonedev.statswrapper.RepositoryStats;
+import net.justonedev.statswrapper.UserStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatsGetterTest {
+
+    @TempDir
+    File repository;
+
+    // The remote of the repository and another clone that pushes to it
+    @TempDir
+    File remotes;
+
+    @Test
+    void backgroundFetchGivesTheSameStatsEveryRun() throws Exception {
+        git("init", "-q", "-b", "main");
+        write("src/Main.java", "class Main {\n    // Entry point\n\n    void run() {}\n}\n");
+        write("src/util/Helper.java", "class Helper {\n}\n");
+        git("add", "-A");
+        git("commit", "-q", "-m", "Initial", "--author", "Alice <alice@example.com>");
+        write("src/util/Helper.java", "class Helper {\n    int value = 1;\n}\n");
+        git("commit", "-q", "-a", "-m", "Change", "--author", "Bob <bob@example.com>");
+
+        String expected = summary(run(FetchPolicy.SKIP));
+        // The first run writes the stats cache, the second one reads it
+        assertEquals(expected, summary(run(FetchPolicy.BACKGROUND)), "first run");
+        assertEquals(expected, summary(run(FetchPolicy.BACKGROUND)), "second run");
+    }
+
+    @Test
+    void fetchPicksUpPushedCommits() throws Exception {
+        File origin = new File(remotes, "origin.git"), other = new File(remotes, "other");
+        git(remotes, "init", "-q", "--bare", "-b", "main", origin.getPath());
+        git(remotes, "clone", "-q", "file://" + origin.getPath(), other.getPath());
+        push(other, "Alice");
+        git(remotes, "clone", "-q", "file://" + origin.getPath(), repository.getPath());
+        push(other, "Bob");
+
+        // The history is read after the fetch, so it has the commit that was pushed after cloning
+        assertEquals(1, commits(run(FetchPolicy.BACKGROUND), "Bob"));
+        File stateFile = new File(repository, ".git/gitstats/last-fetch");
+        assertTrue(stateFile.isFile(), "fetch state");
+
+        // Within the interval, IF_OLDER does not fetch
+        push(other, "Carol");
+        assertEquals(0, commits(run(FetchPolicy.IF_OLDER), "Carol"));
+
+        // Once the last fetch is older than the interval, it fetches once and remembers the time
+        long old = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(Config.FETCH_MAX_AGE_MINUTES + 1);
+        Files.writeString(stateFile.toPath(), Long.toString(old));
+        assertEquals(1, commits(run(FetchPolicy.IF_OLDER), "Carol"));
+        assertTrue(Long.parseLong(Files.readString(stateFile.toPath()).trim()) > old, "fetch time");
+        push(other, "Dave");
+        assertEquals(0, commits(run(FetchPolicy.IF_OLDER), "Dave"));
+    }
+
+    @Test
+    void failedHistoryIsNotCached() throws Exception {
+        git("init", "-q", "-b", "main");
+        write("src/Main.java", "class Main {\n}\n");
+        git("add", "-A");
+        git("commit", "-q", "-m", "Initial", "--author", "Alice <alice@example.com>");
+        write("src/Main.java", "class Main {\n    int value = 1;\n}\n");
+        git("commit", "-q", "-a", "-m", "Change", "--author", "Bob <bob@example.com>");
+
+        // Without the blob of the change, git log --numstat fails
+        String blob = git("rev-parse", "HEAD:src/Main.java");
+        File object = new File(repository, ".git/objects/%s/%s".formatted(blob.substring(0, 2), blob.substring(2)));
+        File moved = new File(repository, "blob");
+        Files.move(object.toPath(), moved.toPath());
+        File cacheFile = new File(repository, ".git/gitstats/stats-cache.bin");
+        for (HistoryBackend historyBackend : HistoryBackend.values()) {
+            readHistory(historyBackend);
+            assertFalse(cacheFile.exists(), historyBackend.name());
+        }
+
+        Files.move(moved.toPath(), object.toPath());
+        readHistory(HistoryBackend.GIT);
+        assertTrue(cacheFile.exists(), "complete history");
+    }
+
+    @Test
+    void cancelledRepositoryStopsWithoutCaching() throws Exception {
+        git("init", "-q", "-b", "main");
+        write("src/Main.java", "class Main {\n}\n");
+        git("add", "-A");
+        git("commit", "-q", "-m", "Initial", "--author", "Alice <alice@example.com>");
+
+        GitCommands.cancel(repository.getPath());
+        try {
+            for (HistoryBackend historyBackend : HistoryBackend.values()) readHistory(historyBackend);
+            assertThrows(CancellationException.class, () -> run(FetchPolicy.SKIP));
+        } finally {
+            GitCommands.resetCancellation(repository.getPath());
+        }
+        assertFalse(new File(repository, ".git/gitstats").exists());
+    }
+
+    private void readHistory(HistoryBackend historyBackend) {
+        StatsGetter statsGetter = new StatsGetter("main");
+        statsGetter.setHistoryBackend(historyBackend);
+        statsGetter.fillGitStatistics(repository.getPath(), new UserStats(), new UserStats(), new FileStats());
+    }
+
+    private RepositoryStats run(FetchPolicy fetchPolicy) {
+        StatsGetter statsGetter = new StatsGetter("main");
+        statsGetter.setFetchPolicy(fetchPolicy);
+        return statsGetter.getAllGitStats(repository.getPath());
+    }
+
+    private static long commits(RepositoryStats stats, String author) {
+        long[] commits = { 0 };
+        stats.fullBranchStats().forEachUser((name, additions, deletions, count) -> {
+            if (name.equals(author)) commits[0] = count;
+        });
+        return commits[0];
+    }
+
+    /**
+     * Commits a change of the given author in the clone and pushes it to the remote.
+     */
+    private void push(File clone, String author) throws Exception {
+        File file = new File(clone, "src/Main.java");
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.writeString(file.toPath(), "class Main {\n    // %s\n}\n".formatted(author), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        git(clone, "add", "-A");
+        git(clone, "commit", "-q", "-m", "Change", "--author", author + " <" + author.toLowerCase() + "@example.com>");
+        git(clone, "push", "-q", "origin", "main");
+    }
+
+    private static String summary(RepositoryStats stats) {
+        List<String> files = new ArrayList<>();
+        stats.fileStats().forEachFile((file, additions, deletions, lines, linesOfCode) ->
+                files.add("%s +%d -%d %d %d".formatted(file, additions, deletions, lines, linesOfCode)));
+        stats.fileStats().forEachFolder(Integer.MAX_VALUE, (folder, additions, deletions, lines, linesOfCode) ->
+                files.add("%s/ +%d -%d %d %d".formatted(folder, additions, deletions, lines, linesOfCode)));
+        files.sort(null);
+        return String.join("\n", stats.fullBranchStats().toString(), stats.mainBranchStats().toString(),
+                stats.contributionStats().toString(), stats.contributionsCommentsStats().toString(), String.join("\n", files));
+    }
+
+    private String git(String... arguments) throws Exception {
+        return git(repository, arguments);
+    }
+
+    private static String git(File directory, String... arguments) throws Exception {
+        List<String> command = new ArrayList<>(List.of("git", "-c", "user.name=Tester", "-c", "user.email=tester@example.com"));
+        command.addAll(List.of(arguments));
+        Process process = new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, process.waitFor(), String.join(" ", command) + " failed: " + output);
+        return output.trim();
+    }
+
+    private void write(String path, String content) throws Exception {
+        File file = new File(repository, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.writeString(file.toPath(), content);
+    }
+}
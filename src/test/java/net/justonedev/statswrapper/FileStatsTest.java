@@ -0,0 +1,46 @@
+package net.justonedev.statswrapper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileStatsTest {
+
+    @Test
+    void othersOnlySumUpRankedFiles() {
+        FileStats stats = new FileStats();
+        stats.addChanges("src/Main.java", 10, 2);
+        stats.incrementLines("src/Main.java", 8, 6);
+        stats.addChanges("src/App.java", 5, 1);
+        stats.incrementLines("src/App.java", 4, 3);
+        stats.addChanges("src/Util.java", 3, 0);
+        stats.incrementLines("src/Util.java", 3, 2);
+        // Deleted files, which have no lines left
+        stats.addChanges("old/Gone.java", 7, 7);
+        stats.addChanges("old/Removed.java", 20, 20);
+
+        List<FileChanges> lines = stats.getTopChangesPlusOthers(FileStats.Ranking.LINES, 2);
+        assertEquals(List.of("src/Main.java", "src/App.java", "Others (1)"), lines.stream().map(FileChanges::getFileName).toList());
+        FileChanges others = lines.getLast();
+        assertTrue(others.isOthers());
+        assertEquals(3, others.getAdditions());
+        assertEquals(0, others.getDeletions());
+        assertEquals(3, others.getLineCount());
+        assertEquals(2, others.getLineCountLOC());
+
+        // Only the files without lines are left, so there is nothing to sum up
+        assertEquals(3, stats.getTopChangesPlusOthers(FileStats.Ranking.LINES, 3).size());
+        assertEquals(3, stats.getTopChanges(FileStats.Ranking.LINES, 0).size());
+
+        List<FileChanges> changes = stats.getTopChangesPlusOthers(FileStats.Ranking.CHANGES, 2);
+        assertEquals(List.of("old/Removed.java", "src/Main.java", "Others (3)"), changes.stream().map(FileChanges::getFileName).toList());
+        assertFalse(changes.getFirst().isOthers());
+        assertEquals(15, changes.getLast().getAdditions());
+        assertEquals(8, changes.getLast().getDeletions());
+        assertEquals(7, changes.getLast().getLineCount());
+    }
+}